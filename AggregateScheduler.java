@@ -0,0 +1,134 @@
+package virus_Bacteria_Simulation;
+
+import virus_Bacteria_Simulation.Organism.EVENT_TYPE;
+
+/**
+ * Type-aggregated scheduler. Every event rate is a class constant, so the
+ * total propensity of an event type is its rate times the number of organisms
+ * that currently own that type of event: bacteria, free phage or prophage.
+ * A step picks an event type from the seven aggregated propensities and then
+ * a uniformly random organism from the matching population. No
+ * per-organism events are created and a step is O(1).
+ * @author Parker, Huttner
+ *
+ */
+public class AggregateScheduler implements OrganismScheduler {
+
+	/* Class Variables */
+	static final EVENT_TYPE[] TYPES = EVENT_TYPE.values();
+
+	/* Instance Variables */
+	private SimulationContext ctx;
+	private double[] rates = new double[TYPES.length]; // rate of each event type
+	private Event current = new Event(); // reused to hand the chosen event to the simulation
+
+	/**
+	 * @param ctx - simulation whose populations are counted
+	 */
+	public AggregateScheduler(SimulationContext ctx) {
+		this.ctx = ctx;
+	}
+
+	/**
+	 * Records the rate of the event type. Organisms are counted through the
+	 * populations they belong to.
+	 */
+	public void add(Organism org, double lambda, EVENT_TYPE type) {
+		rates[type.ordinal()] = lambda;
+	}
+
+	/**
+	 * Records the rates of the event types, once for the whole batch
+	 */
+	public void addAll(Organism[] orgs, int n, double[] lambdas, EVENT_TYPE[] types) {
+		if (n == 0) return;
+		for (int k = 0; k < types.length; k++) rates[types[k].ordinal()] = lambdas[k];
+	}
+
+	/**
+	 * Organisms leave the count when they leave their population
+	 */
+	public void cancel(Organism org) {
+	}
+
+	/**
+	 * Picks the event type from the aggregated propensities, then an organism
+	 * uniformly from the matching population
+	 */
+	public Event next() {
+
+		/* Sum propensities */
+		double total = 0;
+		for (int i = 0; i < TYPES.length; i++) total += propensity(i);
+		if (total <= 0) return null;
+
+		/* Choose the event type */
+		double target = ctx.randy.nextDouble() * total;
+		int type = 0;
+		double sum = propensity(0);
+		while (sum <= target && type < TYPES.length - 1) {
+			type++;
+			sum += propensity(type);
+		}
+		while (propensity(type) == 0) type--; // guard against round-off past the last non-empty type
+
+		/* Choose the organism */
+		current.org = population(TYPES[type]).sample(ctx.randy);
+		current.type = TYPES[type];
+		current.lambda = rates[type];
+		current.time = ctx.t + ctx.randy.nextExponential() / total;
+		current.delete = false;
+		return current;
+	}
+
+	/**
+	 * Propensities are recomputed every step, nothing to update
+	 */
+	public void fired(Event evt) {
+	}
+
+	/**
+	 * @return number of events the counted organisms stand for
+	 */
+	public int size() {
+		return 3 * ctx.bas.size() + 2 * ctx.lps.size() + 2 * ctx.pro.size();
+	}
+
+	/**
+	 * Writes the rates; organisms are restored with their populations
+	 */
+	public void save(Snapshot out) {
+		out.putDoubles(rates, rates.length);
+	}
+
+	public void restore(Snapshot in) {
+		rates = in.getDoubles(TYPES.length);
+	}
+
+	/**
+	 * @param type - event type ordinal
+	 * @return total propensity of the event type
+	 */
+	private double propensity(int type) {
+		return rates[type] * population(TYPES[type]).size();
+	}
+
+	/**
+	 * @param type - event type
+	 * @return population of organisms owning this type of event
+	 */
+	Population<? extends Organism> population(EVENT_TYPE type) {
+		switch (type) {
+			case DEATH:
+			case REPRODUCE:
+			case CONJUGATION:
+				return ctx.bas;
+			case DENATURE:
+			case INFECT:
+				return ctx.lps;
+			default:
+				return ctx.pro;
+		}
+	}
+
+}
@@ -13,37 +13,41 @@ public class Bacterium implements Organism{
 	
 	
 	
-	/* Class Variables */
+	/* Class Variables (defaults of Biology) */
 	static final double rate_death = 0.5; 
 	static final double rate_reproduce = 5.0; 
 	static final double rate_conjugation = 1.0; 
-	static Random rand = new Random();
 	static final String DEATH = "DEATH";
 	static final String REPRODUCE = "REPRODUCE";
 	static final String CONJUGATION = "CONJUGATION";
+	static final double mut_inc = 0.2;// amount mutation helps resistance
+	static final double mut_dec = 0.1;// amount mutation hinders resistance
+	static final double[] sr_prob = {.97,.02,.01}; // prob of surface receptor staying the same / increasing efficacy / decreasing efficacy
+	static final double[] enz_prob = {.975,.015,.01}; // prob of enzymes staying the same / increasing efficacy / decreasing efficacy
 	
 	/* Instance Variables */
+	SimulationContext ctx; // simulation this bacterium lives in
+	long id; // unique within the simulation
 	boolean infected; 
 	Lambda_phage lp; //infecting phage
+	int slot = -1; // position in bacteria population
+	Event[] events = new Event[3]; // handles to live events
 	double prob_surface; // probability of surface receptors not allowing binding of virus
 	double prob_enzymes; // probability of bacterial enzymes degrading viral DNA
-	double mut_inc = 0.2;// amount mutation helps resistance
-	double mut_dec = 0.1;// amount mutation hinders resistance
-	double[] sr_prob = {.97,.02,.01}; // prob of surface receptor staying the same / increasing efficacy / decreasing efficacy
-	double[] enz_prob = {.975,.015,.01}; // prob of enzymes staying the same / increasing efficacy / decreasing efficacy
 
 	
 	/**
 	 * Default constructor
-	 *
+	 * @param ctx - simulation the bacterium lives in
 	 */
-	public Bacterium(){
+	public Bacterium(SimulationContext ctx){
 		
-		this.prob_surface = ((double)rand.nextInt(6))/10.0d;
-		this.prob_enzymes = ((double)rand.nextInt(6))/10.0d;
+		this.ctx = ctx;
+		this.id = ctx.next_id++;
+		this.prob_surface = ((double)ctx.rand.nextInt(6))/10.0d;
+		this.prob_enzymes = ((double)ctx.rand.nextInt(6))/10.0d;
 		
-		Sim.bas_sum_sr += this.prob_surface;
-		Sim.bas_sum_enz += this.prob_enzymes;
+		ctx.bas_stats.add(this.prob_surface, this.prob_enzymes);
 		
 		infected = false;
 		lp = null;
@@ -55,15 +59,17 @@ public class Bacterium implements Organism{
 	
 	/**
 	 * Constructor takes in surface receptor and enzyme probabilities
+	 * @param ctx - simulation the bacterium lives in
 	 * @param prob_surface - probability surface receptor defends against infection
 	 * @param prob_enzymes - probability enzymes degreade viral DNA
 	 */
-	public Bacterium(double prob_surface, double prob_enzymes){
+	public Bacterium(SimulationContext ctx, double prob_surface, double prob_enzymes){
+		this.ctx = ctx;
+		this.id = ctx.next_id++;
 		this.prob_surface = prob_surface;
 		this.prob_enzymes = prob_enzymes;
 		
-		Sim.bas_sum_sr += this.prob_surface;
-		Sim.bas_sum_enz += this.prob_enzymes;
+		ctx.bas_stats.add(this.prob_surface, this.prob_enzymes);
 		
 		infected = false;
 		lp = null;
@@ -72,13 +78,30 @@ public class Bacterium implements Organism{
 	}
 	
 	/**
-	 * Adds all necessary events to Sim event vector
+	 * Recreates a bacterium from a snapshot. Its events, prophage, population
+	 * and the running statistics are restored separately.
+	 * @param ctx - simulation the bacterium lives in
+	 * @param id - id of the saved bacterium
+	 * @param prob_surface - probability surface receptor defends against infection
+	 * @param prob_enzymes - probability enzymes degreade viral DNA
+	 */
+	Bacterium(SimulationContext ctx, long id, double prob_surface, double prob_enzymes){
+		this.ctx = ctx;
+		this.id = id;
+		this.prob_surface = prob_surface;
+		this.prob_enzymes = prob_enzymes;
+		infected = false;
+		lp = null;
+	}
+	
+	/**
+	 * Adds all necessary events to the simulation's event pool
 	 * @param bac - this bacteria
 	 */
 	private void addEvents(Bacterium bac){
-		Sim.events.add(new Event(bac,rate_death,EVENT_TYPE.DEATH));
-		Sim.events.add(new Event(bac,rate_reproduce,EVENT_TYPE.REPRODUCE));
-		Sim.events.add(new Event(bac,rate_conjugation,EVENT_TYPE.CONJUGATION));
+		ctx.org_scheduler.add(bac,ctx.bio.rate_death,EVENT_TYPE.DEATH);
+		ctx.org_scheduler.add(bac,ctx.bio.rate_reproduce,EVENT_TYPE.REPRODUCE);
+		ctx.org_scheduler.add(bac,ctx.bio.rate_conjugation,EVENT_TYPE.CONJUGATION);
 	}
 	
 	/**
@@ -102,25 +125,37 @@ public class Bacterium implements Organism{
 		}
 	}
 
+	public Event[] getEvents(){
+		return events;
+	}
+	
+	public int getSlot(){
+		return slot;
+	}
+	
+	public void setSlot(int slot){
+		this.slot = slot;
+	}
+
 	/**
 	 * Death event removes bacterium from population and all events associated with it
 	 *
 	 */
 	public boolean death(){
-		/* Remove this bacterium from bacteria vector */
-		Sim.bas.remove(this);
+		/* Remove this bacterium and its prophage from the populations */
+		ctx.bas.remove(this);
+		boolean prophage = this.infected && ctx.pro.remove(lp); // false if lysis already removed it
 	
 		/* Update Running Sums */
-		Sim.bas_sum_sr -= this.prob_surface;
-		Sim.bas_sum_enz -= this.prob_enzymes;
-		if(this.infected) Sim.bas_infected--;
+		ctx.bas_stats.remove(this.prob_surface, this.prob_enzymes);
+		if(prophage){
+			ctx.lps_stats.remove(lp.prob_surface, lp.prob_enzymes);
+		}
+		if(this.infected) ctx.bas_infected--;
 		
 		/* Delete all events related to this bacterium */
-		for(Event evt : Sim.events) //Traverse Events
-			if(evt.org.equals(this)) evt.delete = true; // Flag event for deletion
-		if(infected){
-			for(Event evt : Sim.events) if(evt.org.equals(lp)) evt.delete = true; //Traverse Events
-		}
+		ctx.org_scheduler.cancel(this);
+		if(infected) ctx.org_scheduler.cancel(lp);
 		
 		return true;
 	}
@@ -130,32 +165,44 @@ public class Bacterium implements Organism{
 	 * Adds new bacteria to population and updates events accordingly
 	 */
 	public void reproduce(){
-		double new_sr = 0, new_enz = 0; // new surface and enzyme probabiliteis for progeny
-		double next_rand = rand.nextDouble(); // random number for mutation
-		
-		/* Handle surface receptor probabilities */
-		if(next_rand >= 0 && next_rand <= sr_prob[0]){new_sr = prob_surface;}
-		else if(next_rand > sr_prob[0] && next_rand <= sr_prob[1]){new_sr = prob_surface + mut_inc * (1-prob_surface);}
-		else if(next_rand > sr_prob[1] && next_rand < sr_prob[2]){new_sr = prob_surface - mut_dec * (prob_surface);}
-		else { new_sr = prob_surface;}
-		
-		
-		/* Handle enzyme probabilities */
-		next_rand = rand.nextDouble();
-		if(next_rand >= 0 && next_rand <= enz_prob[0]){new_enz = prob_enzymes;}
-		else if(next_rand > enz_prob[0] && next_rand <= enz_prob[1]){new_enz = prob_enzymes + mut_inc * (1-prob_enzymes);}
-		else if(next_rand > enz_prob[1] && next_rand < enz_prob[2]){new_enz = prob_enzymes - mut_dec * (prob_enzymes);}
-		else { new_enz = prob_enzymes;}
-		
+		double new_sr = mutate(ctx.bio, ctx.rand, prob_surface, ctx.bio.sr_prob); // new surface probability for progeny
+		double new_enz = mutate(ctx.bio, ctx.rand, prob_enzymes, ctx.bio.enz_prob); // new enzyme probability for progeny
 		
 		/* Add bacteria and events to the simulation */
-		Bacterium new_bacterium = new Bacterium(new_sr,new_enz);
+		Bacterium new_bacterium = new Bacterium(ctx,new_sr,new_enz);
 		if(this.infected){
 			new_bacterium.infected = true;
 			new_bacterium.lp = new Lambda_phage(this.lp, new_bacterium); // calls infect constructor
+			ctx.pro.add(new_bacterium.lp);
 		}
-		Sim.bas.add(new_bacterium);
-		addEvents(new_bacterium);
+		ctx.bas.add(new_bacterium);
+	}
+	
+	/**
+	 * Draws the resistance probability passed on to progeny. With
+	 * bio.shares the probabilities are summed into the bounds of each
+	 * outcome; otherwise they are used as the bounds themselves, as the
+	 * model always did, so the default values never change the trait.
+	 * @param bio - mutation model
+	 * @param rand - random number generator
+	 * @param prob - parent's resistance probability
+	 * @param probs - prob of staying the same / increasing efficacy / decreasing efficacy
+	 * @return progeny's resistance probability
+	 */
+	static double mutate(Biology bio, Random rand, double prob, double[] probs){
+		double next_rand = rand.nextDouble(); // random number for mutation
+		
+		if(bio.shares){
+			double same = probs[0], increase = same + probs[1], decrease = increase + probs[2];
+			if(next_rand < same){return prob;}
+			else if(next_rand < increase){return prob + bio.mut_inc * (1-prob);}
+			else if(next_rand < decrease){return prob - bio.mut_dec * (prob);}
+			else { return prob;}
+		}
+		if(next_rand >= 0 && next_rand <= probs[0]){return prob;}
+		else if(next_rand > probs[0] && next_rand <= probs[1]){return prob + bio.mut_inc * (1-prob);}
+		else if(next_rand > probs[1] && next_rand < probs[2]){return prob - bio.mut_dec * (prob);}
+		else { return prob;}
 	}
 	
 	/**
@@ -164,16 +211,21 @@ public class Bacterium implements Organism{
 	 *
 	 */
 	public void conjugation(){
-		int bac_index = rand.nextInt(Sim.bas.size()); // bacteria to confer resistance to
+		Bacterium partner = ctx.bas.sample(ctx.rand); // bacteria to confer resistance to
+		if(ctx.trace != null) ctx.trace.partner(partner);
+		
+		double old_sr = partner.prob_surface, old_enz = partner.prob_enzymes;
 		
 		/* Confer surface receptor resistance */
-		Sim.bas.get(bac_index).prob_surface = Sim.bas.get(bac_index).prob_surface + 
-			this.prob_surface * (1 - Sim.bas.get(bac_index).prob_surface);
+		partner.prob_surface = partner.prob_surface + 
+			this.prob_surface * (1 - partner.prob_surface);
 		
 		/* Confer enyzme resistance */
-		Sim.bas.get(bac_index).prob_enzymes = Sim.bas.get(bac_index).prob_enzymes + 
-			this.prob_enzymes * (1 - Sim.bas.get(bac_index).prob_enzymes);
+		partner.prob_enzymes = partner.prob_enzymes + 
+			this.prob_enzymes * (1 - partner.prob_enzymes);
 		
+		ctx.bas_stats.change(old_sr, old_enz, partner.prob_surface, partner.prob_enzymes);
+		if(ctx.trace != null) ctx.trace.traits(partner);
 	}
 
 
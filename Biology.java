@@ -0,0 +1,153 @@
+package virus_Bacteria_Simulation;
+
+import virus_Bacteria_Simulation.Organism.EVENT_TYPE;
+
+/**
+ * Rate constants and mutation model of one run. Every value starts at the
+ * constant of the same name in Bacterium or Lambda_phage, and can be set
+ * by name, so a parameter sweep can vary any of them without recompiling.
+ * A run reads its values through SimulationContext.bio and never changes
+ * them, so replicates may share one instance.
+ *
+ * Names are the field names below; the entries of sr_prob and enz_prob are
+ * named "sr_prob[0]" to "enz_prob[2]". Those entries only act as their
+ * names say when shares is set (see Bacterium.mutate); the original model,
+ * kept by default, reads them as thresholds, and with the default values no
+ * bacterial trait ever changes.
+ * @author Parker, Huttner
+ *
+ */
+public class Biology implements Cloneable {
+
+	/* Class Variables */
+	static final String[] NAMES = {"rate_death", "rate_reproduce", "rate_conjugation", "mut_inc", "mut_dec",
+			"sr_prob[0]", "sr_prob[1]", "sr_prob[2]", "enz_prob[0]", "enz_prob[1]", "enz_prob[2]",
+			"progeny", "rate_denature", "rate_infection", "rate_switch", "rate_secrete",
+			"mutate_prob", "mutate_helps", "mutate_amount"};
+
+	/* Bacterium */
+	double rate_death = Bacterium.rate_death;
+	double rate_reproduce = Bacterium.rate_reproduce;
+	double rate_conjugation = Bacterium.rate_conjugation;
+	double mut_inc = Bacterium.mut_inc; // amount mutation helps resistance
+	double mut_dec = Bacterium.mut_dec; // amount mutation hinders resistance
+	double[] sr_prob = Bacterium.sr_prob.clone(); // prob of surface receptor staying the same / increasing efficacy / decreasing efficacy
+	double[] enz_prob = Bacterium.enz_prob.clone(); // prob of enzymes staying the same / increasing efficacy / decreasing efficacy
+	boolean shares = false; // sr_prob and enz_prob are the probabilities of their outcomes, not the original thresholds
+
+	/* Lambda_phage */
+	int progeny = Lambda_phage.progeny; // # progeny for phage lysis
+	double rate_denature = Lambda_phage.rate_denature;
+	double rate_infection = Lambda_phage.rate_infection;
+	double rate_switch = Lambda_phage.rate_switch; // lysogenic to lytic switch rate
+	double rate_secrete = Lambda_phage.rate_secrete; // lysogenic secretion rate
+	double mutate_prob = Lambda_phage.mutate_prob;
+	double mutate_helps = Lambda_phage.mutate_helps;
+	double mutate_amount = Lambda_phage.mutate_amount; // "Amount" mutation helps
+
+	/**
+	 * @param type - event type
+	 * @return rate of the event type
+	 */
+	public double rate(EVENT_TYPE type) {
+		switch (type) {
+			case DEATH: return rate_death;
+			case REPRODUCE: return rate_reproduce;
+			case CONJUGATION: return rate_conjugation;
+			case DENATURE: return rate_denature;
+			case INFECT: return rate_infection;
+			case SWITCHPHASE: return rate_switch;
+			default: return rate_secrete;
+		}
+	}
+
+	/**
+	 * @param name - one of NAMES
+	 * @return current value, progeny as a double
+	 * @throws IllegalArgumentException for an unknown name
+	 */
+	public double get(String name) {
+		if (name.equals("rate_death")) return rate_death;
+		if (name.equals("rate_reproduce")) return rate_reproduce;
+		if (name.equals("rate_conjugation")) return rate_conjugation;
+		if (name.equals("mut_inc")) return mut_inc;
+		if (name.equals("mut_dec")) return mut_dec;
+		if (name.startsWith("sr_prob[")) return sr_prob[entry(name)];
+		if (name.startsWith("enz_prob[")) return enz_prob[entry(name)];
+		if (name.equals("progeny")) return progeny;
+		if (name.equals("rate_denature")) return rate_denature;
+		if (name.equals("rate_infection")) return rate_infection;
+		if (name.equals("rate_switch")) return rate_switch;
+		if (name.equals("rate_secrete")) return rate_secrete;
+		if (name.equals("mutate_prob")) return mutate_prob;
+		if (name.equals("mutate_helps")) return mutate_helps;
+		if (name.equals("mutate_amount")) return mutate_amount;
+		throw new IllegalArgumentException("unknown biological parameter " + name);
+	}
+
+	/**
+	 * @param name - one of NAMES
+	 * @param value - new value, rounded for progeny
+	 * @throws IllegalArgumentException for an unknown name
+	 */
+	public void set(String name, double value) {
+		if (name.equals("rate_death")) rate_death = value;
+		else if (name.equals("rate_reproduce")) rate_reproduce = value;
+		else if (name.equals("rate_conjugation")) rate_conjugation = value;
+		else if (name.equals("mut_inc")) mut_inc = value;
+		else if (name.equals("mut_dec")) mut_dec = value;
+		else if (name.startsWith("sr_prob[")) sr_prob[entry(name)] = value;
+		else if (name.startsWith("enz_prob[")) enz_prob[entry(name)] = value;
+		else if (name.equals("progeny")) progeny = (int) Math.round(value);
+		else if (name.equals("rate_denature")) rate_denature = value;
+		else if (name.equals("rate_infection")) rate_infection = value;
+		else if (name.equals("rate_switch")) rate_switch = value;
+		else if (name.equals("rate_secrete")) rate_secrete = value;
+		else if (name.equals("mutate_prob")) mutate_prob = value;
+		else if (name.equals("mutate_helps")) mutate_helps = value;
+		else if (name.equals("mutate_amount")) mutate_amount = value;
+		else throw new IllegalArgumentException("unknown biological parameter " + name);
+	}
+
+	/**
+	 * @return independent copy
+	 */
+	public Biology copy() {
+		try {
+			Biology copy = (Biology) super.clone();
+			copy.sr_prob = sr_prob.clone();
+			copy.enz_prob = enz_prob.clone();
+			return copy;
+		}
+		catch (CloneNotSupportedException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * Writes every value to a snapshot, in NAMES order
+	 */
+	void save(Snapshot out) {
+		for (int i = 0; i < NAMES.length; i++) out.putDouble(get(NAMES[i]));
+		out.putBoolean(shares);
+	}
+
+	/**
+	 * Reads values written by save
+	 */
+	void restore(Snapshot in) {
+		for (int i = 0; i < NAMES.length; i++) set(NAMES[i], in.getDouble());
+		shares = in.getBoolean();
+	}
+
+	/**
+	 * @return index of an "sr_prob[i]" or "enz_prob[i]" name
+	 */
+	private static int entry(String name) {
+		int open = name.indexOf('['), close = name.indexOf(']');
+		int i = close > open ? Integer.parseInt(name.substring(open + 1, close)) : -1;
+		if (i < 0 || i > 2 || close != name.length() - 1) throw new IllegalArgumentException("unknown biological parameter " + name);
+		return i;
+	}
+
+}
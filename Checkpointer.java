@@ -0,0 +1,132 @@
+package virus_Bacteria_Simulation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Periodically saves a running simulation to a snapshot file, so a run
+ * killed part way can be continued with SimulationContext.resume.
+ *
+ * Between events the simulation thread copies its state into an in-memory
+ * Snapshot, which takes time linear in the populations; a background thread
+ * then writes the copy to disk, forces it and renames it over the
+ * checkpoint file, so the file always holds the last complete snapshot.
+ * A checkpoint that falls due while the previous one is still being
+ * written is put off until the writer is free. Saving reads the state
+ * without changing it, so a checkpointed run has the same trajectory as
+ * one without checkpoints.
+ * @author Parker, Huttner
+ *
+ */
+public class Checkpointer {
+
+	/* Class Variables */
+	static final int CLOCK_EVERY = 4096; // events between reads of the clock
+
+	/* Instance Variables */
+	private SimulationContext ctx;
+	private File file; // checkpoint file
+	private long interval; // nanoseconds between checkpoints
+	private long due; // System.nanoTime() of the next checkpoint
+	private int countdown = CLOCK_EVERY; // events until the clock is read
+	private Snapshot snapshot = new Snapshot(); // state copy, owned by the writer while a write is in progress
+	private ExecutorService writer;
+	private Future<Void> writing; // write in progress, null if none
+	long saved; // checkpoints started
+
+	/**
+	 * @param ctx - simulation to checkpoint
+	 * @param file - checkpoint file, replaced by each checkpoint
+	 * @param seconds - wall clock time between checkpoints
+	 */
+	public Checkpointer(SimulationContext ctx, File file, double seconds) {
+		this.ctx = ctx;
+		this.file = file;
+		this.interval = (long) (Math.max(seconds, 0) * 1e9);
+		this.due = System.nanoTime() + interval;
+		this.writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "checkpoint " + Checkpointer.this.file.getName());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Called by the simulation between events; starts a checkpoint once the
+	 * interval has passed and the writer is free
+	 * @param events - events since the last call
+	 */
+	void poll(long events) {
+		countdown -= events;
+		if (countdown > 0) return;
+		countdown = CLOCK_EVERY;
+		if (System.nanoTime() < due || (writing != null && !writing.isDone())) return;
+		checkpoint();
+	}
+
+	/**
+	 * Copies the state now and hands it to the writer, waiting for a write
+	 * still in progress first. Samples buffered by the recorder are flushed
+	 * to its sinks, so the snapshot's recorder position matches them.
+	 * @throws UncheckedIOException if the previous write failed
+	 */
+	public void checkpoint() {
+		await();
+		ctx.recorder.flush();
+		snapshot.clear();
+		ctx.save(snapshot);
+		writing = writer.submit(new Callable<Void>() {
+			public Void call() throws IOException {
+				snapshot.write(file);
+				return null;
+			}
+		});
+		saved++;
+		due = System.nanoTime() + interval;
+	}
+
+	/**
+	 * Waits for the last write and stops the writer thread
+	 * @throws UncheckedIOException if a write failed
+	 */
+	public void close() {
+		try {
+			await();
+		}
+		finally {
+			writer.shutdown();
+		}
+	}
+
+	/**
+	 * Waits for the write in progress, if any
+	 */
+	private void await() {
+		if (writing == null) return;
+		try {
+			writing.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while writing checkpoint " + file, e);
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) throw new UncheckedIOException((IOException) cause);
+			throw new IllegalStateException("checkpoint " + file + " failed", cause);
+		}
+		finally {
+			writing = null;
+		}
+	}
+
+}
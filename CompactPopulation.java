@@ -0,0 +1,414 @@
+package virus_Bacteria_Simulation;
+
+import java.util.Arrays;
+
+import virus_Bacteria_Simulation.Organism.EVENT_TYPE;
+
+/**
+ * Compact population backend. Bacteria, free phage and prophage are stored as
+ * parallel primitive arrays and addressed by int handles (their index) instead
+ * of Bacterium / Lambda_phage objects with their own events. A bacterium costs
+ * 20 bytes (two doubles and a prophage link), a free phage 16 bytes and a
+ * prophage 20 bytes (two doubles and a host link).
+ *
+ * Removal swaps the last entry into the hole, so handles are only stable
+ * until the next removal. The event methods follow Bacterium and
+ * Lambda_phage and share their mutation models.
+ *
+ * Free phage can instead be kept as counts per genotype in PhageBins. A free
+ * phage handle is then its rank across the bins, so a uniform handle picks a
+ * bin in proportion to its count, and unmutated lysis progeny are a single
+ * count increment.
+ * @author Parker, Huttner
+ *
+ */
+public class CompactPopulation {
+
+	/* Bacteria */
+	double[] ba_surface = new double[64];
+	double[] ba_enzymes = new double[64];
+	int[] ba_prophage = new int[64]; // handle of the infecting prophage, -1 if not infected
+	int bacteria; // number of bacteria
+
+	/* Free lambda phage */
+	double[] lp_surface = new double[64];
+	double[] lp_enzymes = new double[64];
+	int free; // number of free phage
+	PhageBins bins; // free phage binned by genotype, null when stored individually
+
+	/* Prophage */
+	double[] pro_surface = new double[64];
+	double[] pro_enzymes = new double[64];
+	int[] pro_host = new int[64]; // handle of the host bacterium
+	int prophage; // number of prophage
+
+	private SimulationContext ctx; // simulation whose running sums are kept
+	private double[] traits = new double[2]; // scratch space for phage mutation
+
+	/**
+	 * Creates a backend storing every free phage individually
+	 * @param ctx - simulation the population belongs to
+	 */
+	public CompactPopulation(SimulationContext ctx) {
+		this.ctx = ctx;
+	}
+
+	/**
+	 * Creates a backend storing free phage as counts per genotype
+	 * @param ctx - simulation the population belongs to
+	 * @param bins - genotype bins for free phage
+	 */
+	public CompactPopulation(SimulationContext ctx, PhageBins bins) {
+		this.ctx = ctx;
+		this.bins = bins;
+	}
+
+	/**
+	 * Creates the starting populations with the same random traits as the
+	 * default Bacterium and Lambda_phage constructors
+	 * @param lp_start - starting number of lambda phage
+	 * @param ba_start - starting number of bacteria
+	 */
+	public void populate(int lp_start, int ba_start) {
+		for (int i = 0; i < lp_start; i++)
+			addFreePhage(((double) ctx.randy.nextInt(6)) / 10.0d, ((double) ctx.randy.nextInt(6)) / 10.0d, 1);
+		for (int i = 0; i < ba_start; i++)
+			addBacterium(((double) ctx.rand.nextInt(6)) / 10.0d, ((double) ctx.rand.nextInt(6)) / 10.0d);
+	}
+
+	/**
+	 * Writes the populations in handle order to a snapshot
+	 */
+	void save(Snapshot out) {
+		out.putInt(bacteria);
+		out.putDoubles(ba_surface, bacteria);
+		out.putDoubles(ba_enzymes, bacteria);
+		out.putInts(ba_prophage, bacteria);
+		out.putInt(free);
+		if (bins != null) bins.save(out);
+		else {
+			out.putDoubles(lp_surface, free);
+			out.putDoubles(lp_enzymes, free);
+		}
+		out.putInt(prophage);
+		out.putDoubles(pro_surface, prophage);
+		out.putDoubles(pro_enzymes, prophage);
+		out.putInts(pro_host, prophage);
+	}
+
+	/**
+	 * Replaces the populations with ones written by save. The running
+	 * statistics are restored separately.
+	 */
+	void restore(Snapshot in) {
+		bacteria = in.getInt();
+		ba_surface = in.getDoubles(64);
+		ba_enzymes = in.getDoubles(64);
+		ba_prophage = in.getInts(64);
+		free = in.getInt();
+		if (bins != null) bins.restore(in);
+		else {
+			lp_surface = in.getDoubles(64);
+			lp_enzymes = in.getDoubles(64);
+		}
+		prophage = in.getInt();
+		pro_surface = in.getDoubles(64);
+		pro_enzymes = in.getDoubles(64);
+		pro_host = in.getInts(64);
+	}
+
+	/**
+	 * @param type - event type
+	 * @return number of organisms owning this type of event
+	 */
+	public int count(EVENT_TYPE type) {
+		switch (type) {
+			case DEATH:
+			case REPRODUCE:
+			case CONJUGATION:
+				return bacteria;
+			case DENATURE:
+			case INFECT:
+				return free;
+			default:
+				return prophage;
+		}
+	}
+
+	/**
+	 * Executes an event for the organism with the given handle
+	 * @param type - event type
+	 * @param handle - index of the bacterium, free phage or prophage
+	 */
+	public void execute(EVENT_TYPE type, int handle) {
+		switch (type) {
+			case DEATH:
+				death(handle);
+				break;
+			case REPRODUCE:
+				reproduce(handle);
+				break;
+			case CONJUGATION:
+				conjugation(handle);
+				break;
+			case DENATURE:
+				denature(handle);
+				break;
+			case INFECT:
+				infect(handle);
+				break;
+			case SWITCHPHASE:
+				switchPhase(handle);
+				break;
+			case SECRETE:
+				secrete(handle);
+				break;
+		}
+	}
+
+	/**
+	 * DEATH - removes the bacterium and its prophage
+	 * @param b - bacterium handle
+	 */
+	public void death(int b) {
+		if (ba_prophage[b] >= 0) removeProphage(ba_prophage[b]);
+		removeBacterium(b);
+	}
+
+	/**
+	 * REPRODUCE - adds a progeny bacterium with mutated resistance. Progeny
+	 * of an infected bacterium inherit a copy of the prophage.
+	 * @param b - bacterium handle
+	 */
+	public void reproduce(int b) {
+		double new_sr = Bacterium.mutate(ctx.bio, ctx.rand, ba_surface[b], ctx.bio.sr_prob);
+		double new_enz = Bacterium.mutate(ctx.bio, ctx.rand, ba_enzymes[b], ctx.bio.enz_prob);
+
+		int child = addBacterium(new_sr, new_enz);
+		int p = ba_prophage[b];
+		if (p >= 0) addProphage(child, pro_surface[p], pro_enzymes[p]);
+	}
+
+	/**
+	 * CONJUGATION - confers resistance to a random bacterium
+	 * @param b - bacterium handle
+	 */
+	public void conjugation(int b) {
+		int partner = ctx.rand.nextInt(bacteria);
+		double new_sr = ba_surface[partner] + ba_surface[b] * (1 - ba_surface[partner]);
+		double new_enz = ba_enzymes[partner] + ba_enzymes[b] * (1 - ba_enzymes[partner]);
+
+		ctx.bas_stats.change(ba_surface[partner], ba_enzymes[partner], new_sr, new_enz);
+		ba_surface[partner] = new_sr;
+		ba_enzymes[partner] = new_enz;
+	}
+
+	/**
+	 * DENATURE - removes the free phage
+	 * @param f - free phage handle
+	 */
+	public void denature(int f) {
+		removeFreePhage(f);
+	}
+
+	/**
+	 * INFECT - tries to infect a random bacterium. On success the free phage
+	 * becomes its prophage, otherwise the phage is lost.
+	 * @param f - free phage handle
+	 * @return true if the phage infected a bacterium
+	 */
+	public boolean infect(int f) {
+		int b = ctx.randy.nextInt(bacteria);
+		if (bins != null) f = bins.find(f); // phage rank to its bin
+		double sr = bins != null ? bins.surface[f] : lp_surface[f];
+		double enz = bins != null ? bins.enzymes[f] : lp_enzymes[f];
+
+		boolean infected = (((1 - ba_surface[b]) * sr) >= ctx.randy.nextDouble())
+				&& (((1 - ba_enzymes[b]) * enz) >= ctx.randy.nextDouble())
+				&& ba_prophage[b] < 0;
+
+		if (bins != null) removeFromBin(f);
+		else removeFreePhage(f);
+		if (infected) addProphage(b, sr, enz);
+		return infected;
+	}
+
+	/**
+	 * SWITCHPHASE - lysis of the host: removes the prophage and its host and
+	 * releases Biology.progeny free phage
+	 * @param p - prophage handle
+	 */
+	public void switchPhase(int p) {
+		double sr = pro_surface[p];
+		double enz = pro_enzymes[p];
+
+		death(pro_host[p]);
+
+		if (bins != null) {
+			/* Unmutated progeny share the parent's bin, only mutants are drawn */
+			int mutants = Distributions.binomial(ctx.randy, ctx.bio.progeny, ctx.bio.mutate_prob);
+			addFreePhage(sr, enz, ctx.bio.progeny - mutants);
+			for (int i = 0; i < mutants; i++) {
+				traits[0] = sr;
+				traits[1] = enz;
+				Lambda_phage.perturb(ctx.bio, ctx.randy, traits);
+				addFreePhage(traits[0], traits[1], 1);
+			}
+		}
+		else for (int i = 0; i < ctx.bio.progeny; i++) addProgeny(sr, enz);
+	}
+
+	/**
+	 * SECRETE - lysogenic secretion of one free phage
+	 * @param p - prophage handle
+	 */
+	public void secrete(int p) {
+		addProgeny(pro_surface[p], pro_enzymes[p]);
+	}
+
+	/**
+	 * Adds a free phage with the parent's traits after the mutation model
+	 * @param sr - parent's surface probability
+	 * @param enz - parent's enzyme probability
+	 */
+	void addProgeny(double sr, double enz) {
+		traits[0] = sr;
+		traits[1] = enz;
+		Lambda_phage.mutate(ctx.bio, ctx.randy, traits);
+		addFreePhage(traits[0], traits[1], 1);
+	}
+
+	/**
+	 * @param sr - surface receptor probability
+	 * @param enz - enzyme probability
+	 * @return handle of the new bacterium
+	 */
+	int addBacterium(double sr, double enz) {
+		if (bacteria == ba_surface.length) {
+			int capacity = 2 * bacteria;
+			ba_surface = Arrays.copyOf(ba_surface, capacity);
+			ba_enzymes = Arrays.copyOf(ba_enzymes, capacity);
+			ba_prophage = Arrays.copyOf(ba_prophage, capacity);
+		}
+		ba_surface[bacteria] = sr;
+		ba_enzymes[bacteria] = enz;
+		ba_prophage[bacteria] = -1;
+
+		ctx.bas_stats.add(sr, enz);
+		return bacteria++;
+	}
+
+	/**
+	 * @param sr - surface probability
+	 * @param enz - enzyme probability
+	 * @param n - number of identical free phage to add
+	 */
+	void addFreePhage(double sr, double enz, int n) {
+		if (bins != null) {
+			sr = bins.quantize(sr);
+			enz = bins.quantize(enz);
+			bins.add(sr, enz, n);
+			free += n;
+		} else {
+			for (int i = 0; i < n; i++) {
+				if (free == lp_surface.length) {
+					int capacity = 2 * free;
+					lp_surface = Arrays.copyOf(lp_surface, capacity);
+					lp_enzymes = Arrays.copyOf(lp_enzymes, capacity);
+				}
+				lp_surface[free] = sr;
+				lp_enzymes[free] = enz;
+				free++;
+			}
+		}
+
+		ctx.lps_stats.add(sr, enz, n);
+	}
+
+	/**
+	 * @param host - handle of an uninfected bacterium
+	 * @param sr - surface probability
+	 * @param enz - enzyme probability
+	 * @return handle of the new prophage
+	 */
+	int addProphage(int host, double sr, double enz) {
+		if (prophage == pro_surface.length) {
+			int capacity = 2 * prophage;
+			pro_surface = Arrays.copyOf(pro_surface, capacity);
+			pro_enzymes = Arrays.copyOf(pro_enzymes, capacity);
+			pro_host = Arrays.copyOf(pro_host, capacity);
+		}
+		pro_surface[prophage] = sr;
+		pro_enzymes[prophage] = enz;
+		pro_host[prophage] = host;
+		ba_prophage[host] = prophage;
+
+		ctx.lps_stats.add(sr, enz);
+		ctx.bas_infected++;
+		return prophage++;
+	}
+
+	/**
+	 * Removes a bacterium, moving the last bacterium into its handle
+	 * @param b - handle of a bacterium without prophage
+	 */
+	void removeBacterium(int b) {
+		ctx.bas_stats.remove(ba_surface[b], ba_enzymes[b]);
+
+		int last = --bacteria;
+		if (b != last) {
+			ba_surface[b] = ba_surface[last];
+			ba_enzymes[b] = ba_enzymes[last];
+			ba_prophage[b] = ba_prophage[last];
+			if (ba_prophage[b] >= 0) pro_host[ba_prophage[b]] = b;
+		}
+	}
+
+	/**
+	 * Removes a free phage, moving the last free phage into its handle
+	 * @param f - free phage handle
+	 */
+	void removeFreePhage(int f) {
+		if (bins != null) {
+			removeFromBin(bins.find(f));
+			return;
+		}
+		ctx.lps_stats.remove(lp_surface[f], lp_enzymes[f]);
+
+		int last = --free;
+		if (f != last) {
+			lp_surface[f] = lp_surface[last];
+			lp_enzymes[f] = lp_enzymes[last];
+		}
+	}
+
+	/**
+	 * Removes one free phage from a genotype bin
+	 * @param bin - non-empty bin
+	 */
+	void removeFromBin(int bin) {
+		ctx.lps_stats.remove(bins.surface[bin], bins.enzymes[bin]);
+		bins.remove(bin);
+		free--;
+	}
+
+	/**
+	 * Removes a prophage and clears its host's link, moving the last
+	 * prophage into its handle
+	 * @param p - prophage handle
+	 */
+	void removeProphage(int p) {
+		ctx.lps_stats.remove(pro_surface[p], pro_enzymes[p]);
+		ctx.bas_infected--;
+		ba_prophage[pro_host[p]] = -1;
+
+		int last = --prophage;
+		if (p != last) {
+			pro_surface[p] = pro_surface[last];
+			pro_enzymes[p] = pro_enzymes[last];
+			pro_host[p] = pro_host[last];
+			ba_prophage[pro_host[p]] = p;
+		}
+	}
+
+}
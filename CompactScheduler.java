@@ -0,0 +1,118 @@
+package virus_Bacteria_Simulation;
+
+import virus_Bacteria_Simulation.Organism.EVENT_TYPE;
+
+/**
+ * Type-aggregated scheduler over a CompactPopulation. Picks an event type
+ * from rate times count, then a uniformly random handle, exactly like
+ * AggregateScheduler but without any organism objects.
+ * @author Parker, Huttner
+ *
+ */
+public class CompactScheduler implements Scheduler {
+
+	/* Class Variables */
+	static final EVENT_TYPE[] TYPES = EVENT_TYPE.values();
+
+	/* Instance Variables */
+	private SimulationContext ctx;
+	private CompactPopulation pop;
+	private Handle handle = new Handle(); // stands in for the chosen organism
+	private Event current = new Event(); // reused to hand the chosen event to the simulation
+
+	/**
+	 * @param ctx - simulation whose events are scheduled
+	 * @param pop - compact population to schedule events for
+	 */
+	public CompactScheduler(SimulationContext ctx, CompactPopulation pop) {
+		this.ctx = ctx;
+		this.pop = pop;
+		current.org = handle;
+	}
+
+	/**
+	 * Picks the event type from the aggregated propensities, then a handle
+	 * uniformly from the matching part of the population
+	 */
+	public Event next() {
+
+		/* Sum propensities */
+		double total = 0;
+		for (int i = 0; i < TYPES.length; i++) total += propensity(i);
+		if (total <= 0) return null;
+
+		/* Choose the event type */
+		double target = ctx.randy.nextDouble() * total;
+		int type = 0;
+		double sum = propensity(0);
+		while (sum <= target && type < TYPES.length - 1) {
+			type++;
+			sum += propensity(type);
+		}
+		while (propensity(type) == 0) type--; // guard against round-off past the last non-empty type
+
+		/* Choose the organism */
+		handle.index = ctx.randy.nextInt(pop.count(TYPES[type]));
+		current.type = TYPES[type];
+		current.lambda = ctx.bio.rate(TYPES[type]);
+		current.time = ctx.t + ctx.randy.nextExponential() / total;
+		current.delete = false;
+		return current;
+	}
+
+	/**
+	 * Propensities are recomputed every step, nothing to update
+	 */
+	public void fired(Event evt) {
+	}
+
+	/**
+	 * @return number of events the stored organisms stand for
+	 */
+	public int size() {
+		return 3 * pop.bacteria + 2 * pop.free + 2 * pop.prophage;
+	}
+
+	/**
+	 * Propensities are recomputed every step, nothing to save
+	 */
+	public void save(Snapshot out) {
+	}
+
+	public void restore(Snapshot in) {
+	}
+
+	/**
+	 * @param type - event type ordinal
+	 * @return total propensity of the event type
+	 */
+	private double propensity(int type) {
+		return ctx.bio.rate(TYPES[type]) * pop.count(TYPES[type]);
+	}
+
+	/**
+	 * Int handle standing in for an organism object, so the chosen event can
+	 * be executed through Organism.execute
+	 */
+	private class Handle implements Organism {
+
+		int index; // handle of the chosen organism
+
+		public void execute(EVENT_TYPE type) {
+			pop.execute(type, index);
+		}
+
+		public Event[] getEvents() {
+			return null;
+		}
+
+		public int getSlot() {
+			return index;
+		}
+
+		public void setSlot(int slot) {
+			index = slot;
+		}
+	}
+
+}
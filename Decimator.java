@@ -0,0 +1,148 @@
+package virus_Bacteria_Simulation;
+
+/**
+ * Reduces a series to about as many points as a chart can show, so the
+ * cost of drawing it depends on the chart's resolution rather than on the
+ * length of the run. Both methods make one pass over the series and keep
+ * points of the original series, never interpolated ones. Points with a
+ * NaN coordinate (averages of an empty population) cannot be drawn and are
+ * dropped.
+ *
+ * 	minMax - splits the x range into one bucket per pixel column and keeps
+ * 		the lowest and highest point of each, so every column covers
+ * 		exactly the vertical extent the full series would
+ * 	lttb - largest triangle three buckets (Steinarsson 2013): splits the
+ * 		series into equal count buckets and keeps the point of each that
+ * 		forms the largest triangle with its neighbours, which keeps the
+ * 		visual shape of a line with fewer points
+ * @author Parker, Huttner
+ *
+ */
+public class Decimator {
+
+	/**
+	 * Keeps the lowest and highest point of each pixel column
+	 * @param xy - {x values, y values}, as from XYSeries.toArray()
+	 * @param columns - pixel columns across the x range
+	 * @return {x values, y values} of at most 2 * columns points, by column
+	 * and in series order within a column
+	 */
+	public static double[][] minMax(double[][] xy, int columns) {
+		double[][] finite = finite(xy);
+		double[] x = finite[0], y = finite[1];
+		int n = x.length;
+		if (n <= 2 * columns) return finite;
+
+		double x_min = Double.POSITIVE_INFINITY, x_max = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < n; i++) {
+			x_min = Math.min(x_min, x[i]);
+			x_max = Math.max(x_max, x[i]);
+		}
+		double scale = x_max > x_min ? columns / (x_max - x_min) : 0;
+
+		int[] low = new int[columns], high = new int[columns]; // point index + 1, 0 for an empty column
+		for (int i = 0; i < n; i++) {
+			int c = Math.min((int) ((x[i] - x_min) * scale), columns - 1);
+			if (low[c] == 0 || y[i] < y[low[c] - 1]) low[c] = i + 1;
+			if (high[c] == 0 || y[i] > y[high[c] - 1]) high[c] = i + 1;
+		}
+
+		double[][] kept = new double[2][2 * columns];
+		int k = 0;
+		for (int c = 0; c < columns; c++) {
+			if (low[c] == 0) continue;
+			int first = Math.min(low[c], high[c]) - 1, second = Math.max(low[c], high[c]) - 1;
+			kept[0][k] = x[first];
+			kept[1][k++] = y[first];
+			if (second != first) {
+				kept[0][k] = x[second];
+				kept[1][k++] = y[second];
+			}
+		}
+		return trim(kept, k);
+	}
+
+	/**
+	 * Largest triangle three buckets
+	 * @param xy - {x values, y values} in x order, as from XYSeries.toArray()
+	 * @param threshold - number of points to keep, at least 3
+	 * @return {x values, y values} of at most threshold points, in series order
+	 */
+	public static double[][] lttb(double[][] xy, int threshold) {
+		double[][] finite = finite(xy);
+		double[] x = finite[0], y = finite[1];
+		int n = x.length;
+		if (n <= threshold || threshold < 3) return finite;
+
+		double[][] kept = new double[2][threshold];
+		kept[0][0] = x[0];
+		kept[1][0] = y[0];
+		double bucket = (double) (n - 2) / (threshold - 2); // points per bucket, first and last point excluded
+		int chosen = 0; // point kept from the previous bucket
+
+		for (int b = 0; b < threshold - 2; b++) {
+			int start = (int) (b * bucket) + 1, end = (int) ((b + 1) * bucket) + 1;
+
+			/* Average of the next bucket, or the last point */
+			int next_start = end, next_end = Math.min((int) ((b + 2) * bucket) + 1, n);
+			double avg_x = 0, avg_y = 0;
+			for (int i = next_start; i < next_end; i++) {
+				avg_x += x[i];
+				avg_y += y[i];
+			}
+			int count = next_end - next_start;
+			avg_x /= count;
+			avg_y /= count;
+
+			/* Point of this bucket spanning the largest triangle */
+			double max_area = -1;
+			int best = start;
+			for (int i = start; i < end; i++) {
+				double area = Math.abs((x[chosen] - avg_x) * (y[i] - y[chosen]) - (x[chosen] - x[i]) * (avg_y - y[chosen]));
+				if (area > max_area) {
+					max_area = area;
+					best = i;
+				}
+			}
+			kept[0][b + 1] = x[best];
+			kept[1][b + 1] = y[best];
+			chosen = best;
+		}
+		kept[0][threshold - 1] = x[n - 1];
+		kept[1][threshold - 1] = y[n - 1];
+		return kept;
+	}
+
+	/**
+	 * @return the points with finite coordinates, the input itself if all are
+	 */
+	private static double[][] finite(double[][] xy) {
+		double[] x = xy[0], y = xy[1];
+		int n = x.length, k = 0;
+		double[][] kept = null;
+		for (int i = 0; i < n; i++) {
+			boolean drawable = !Double.isNaN(x[i]) && !Double.isNaN(y[i]) && !Double.isInfinite(x[i]) && !Double.isInfinite(y[i]);
+			if (kept == null) {
+				if (drawable) continue;
+				kept = new double[2][n];
+				System.arraycopy(x, 0, kept[0], 0, i);
+				System.arraycopy(y, 0, kept[1], 0, i);
+				k = i;
+			}
+			else if (drawable) {
+				kept[0][k] = x[i];
+				kept[1][k++] = y[i];
+			}
+		}
+		return kept == null ? xy : trim(kept, k);
+	}
+
+	private static double[][] trim(double[][] xy, int n) {
+		if (xy[0].length == n) return xy;
+		double[][] trimmed = new double[2][n];
+		System.arraycopy(xy[0], 0, trimmed[0], 0, n);
+		System.arraycopy(xy[1], 0, trimmed[1], 0, n);
+		return trimmed;
+	}
+
+}
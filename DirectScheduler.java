@@ -0,0 +1,145 @@
+package virus_Bacteria_Simulation;
+
+import java.util.Vector;
+
+import virus_Bacteria_Simulation.Organism.EVENT_TYPE;
+
+/**
+ * Direct scan scheduler - draws a fresh exponential time for every event
+ * on each step and fires the one that happens first.
+ * @author Parker, Huttner
+ *
+ */
+public class DirectScheduler implements OrganismScheduler {
+
+	/* Instance Variables */
+	private SimulationContext ctx;
+	private Vector<Event> events = new Vector<Event>(); //List of events
+	private int invalid; // number of flagged events still in the vector
+	private double[] draws = new double[64]; // exponential draws for one traversal
+
+	/**
+	 * @param ctx - simulation whose events are scheduled
+	 */
+	public DirectScheduler(SimulationContext ctx) {
+		this.ctx = ctx;
+	}
+
+	/**
+	 * Adds a new event to the event vector
+	 */
+	public void add(Organism org, double lambda, EVENT_TYPE type) {
+		Event evt = new Event(org, lambda, type);
+		evt.attach();
+		events.add(evt);
+	}
+
+	/**
+	 * Grows the event vector once for the whole batch
+	 */
+	public void addAll(Organism[] orgs, int n, double[] lambdas, EVENT_TYPE[] types) {
+		events.ensureCapacity(events.size() + n * types.length);
+		for (int i = 0; i < n; i++) {
+			for (int k = 0; k < types.length; k++) {
+				Event evt = new Event(orgs[i], lambdas[k], types[k]);
+				evt.attach();
+				events.add(evt);
+			}
+		}
+	}
+
+	/**
+	 * Flags the organism's events for deletion through its handles. Flagged
+	 * events are removed in bulk once they make up half the vector.
+	 */
+	public void cancel(Organism org) {
+		Event[] handles = org.getEvents();
+		for (int i = 0; i < handles.length; i++) {
+			if (handles[i] != null) {
+				handles[i].delete = true; // Flag event for deletion
+				handles[i] = null;
+				invalid++;
+			}
+		}
+		if (2 * invalid > events.size()) compact();
+	}
+
+	/**
+	 * Traverses the event list drawing an exponential time for each valid event.
+	 * The draws are made in one batch before the traversal.
+	 */
+	public Event next() {
+
+		if (size() == 0) return null;
+
+		/* Draw one exponential per valid event */
+		int valid = size();
+		if (draws.length < valid) draws = new double[Math.max(valid, 2 * draws.length)];
+		ctx.randy.fillExponential(draws, valid);
+
+		/* Initialize Event Traversal */
+		double min_time = Double.MAX_VALUE; //The time until first event
+		Event first_event = null;
+
+		/*  Traverse list of events */
+		int d = 0;
+		for (int i = 0; i < events.size(); i++) {
+			if (events.get(i).delete) continue;
+			double time = draws[d++] / events.get(i).lambda; //Calculate time for each valid event
+			if (time < min_time) { //Find the event that happens first
+				min_time = time;
+				first_event = events.get(i);
+			}
+		}
+		if (first_event == null) return null;
+
+		first_event.time = ctx.t + min_time;
+		return first_event;
+	}
+
+	/**
+	 * Times are redrawn every step, nothing to update
+	 */
+	public void fired(Event evt) {
+	}
+
+	/**
+	 * @return number of valid events in the event vector
+	 */
+	public int size() {
+		return events.size() - invalid;
+	}
+
+	/**
+	 * Writes the valid events in vector order. Flagged events take no draws,
+	 * so dropping them leaves the trajectory unchanged.
+	 */
+	public void save(Snapshot out) {
+		out.putInt(size());
+		for (int i = 0; i < events.size(); i++) {
+			if (!events.get(i).delete) out.putEvent(events.get(i));
+		}
+	}
+
+	public void restore(Snapshot in) {
+		int valid = in.getInt();
+		events = new Vector<Event>(valid);
+		for (int i = 0; i < valid; i++) events.add(in.getEvent(ctx));
+		invalid = 0;
+	}
+
+	/**
+	 * Removes all flagged events in a single pass, keeping the order of the
+	 * remaining events
+	 */
+	private void compact() {
+		int kept = 0;
+		for (int i = 0; i < events.size(); i++) {
+			Event evt = events.get(i);
+			if (!evt.delete) events.set(kept++, evt);
+		}
+		events.setSize(kept);
+		invalid = 0;
+	}
+
+}
@@ -0,0 +1,95 @@
+package virus_Bacteria_Simulation;
+
+import java.util.Random;
+
+/**
+ * Random variates used to apply many events at once
+ * @author Parker, Huttner
+ *
+ */
+public class Distributions {
+
+	/**
+	 * Binomial variate by summing geometric waiting times between successes.
+	 * Exact, and costs O(n * min(p, 1-p)) uniform draws.
+	 * @param rand - random number generator
+	 * @param n - number of trials
+	 * @param p - success probability of each trial
+	 * @return number of successes
+	 */
+	public static int binomial(Random rand, int n, double p) {
+		if (n <= 0 || p <= 0) return 0;
+		if (p >= 1) return n;
+		if (p > 0.5) return n - binomial(rand, n, 1 - p);
+
+		double log_q = Math.log(1 - p);
+		int successes = 0;
+		long trials = 0;
+		while (true) {
+			trials += 1 + (long) Math.floor(Math.log(1 - rand.nextDouble()) / log_q); // trials up to the next success
+			if (trials > n) return successes;
+			successes++;
+		}
+	}
+
+	/**
+	 * Poisson variate. Uses multiplication of uniforms for small means and
+	 * Hormann's transformed rejection with squeeze (PTRS) otherwise, both exact.
+	 * @param rand - random number generator
+	 * @param mean - mean of the distribution
+	 * @return number of occurrences
+	 */
+	public static long poisson(Random rand, double mean) {
+		if (mean <= 0) return 0;
+
+		if (mean < 10) {
+			double limit = Math.exp(-mean);
+			double product = rand.nextDouble();
+			long k = 0;
+			while (product > limit) {
+				k++;
+				product *= rand.nextDouble();
+			}
+			return k;
+		}
+
+		double slam = Math.sqrt(mean);
+		double loglam = Math.log(mean);
+		double b = 0.931 + 2.53 * slam;
+		double a = -0.059 + 0.02483 * b;
+		double invalpha = 1.1239 + 1.1328 / (b - 3.4);
+		double vr = 0.9277 - 3.6224 / (b - 2);
+
+		while (true) {
+			double u = rand.nextDouble() - 0.5;
+			double v = rand.nextDouble();
+			double us = 0.5 - Math.abs(u);
+			long k = (long) Math.floor((2 * a / us + b) * u + mean + 0.43);
+			if (us >= 0.07 && v <= vr) return k;
+			if (k < 0 || (us < 0.013 && v > us)) continue;
+			if (Math.log(v) + Math.log(invalpha) - Math.log(a / (us * us) + b)
+					<= -mean + k * loglam - logFactorial(k)) return k;
+		}
+	}
+
+	/**
+	 * @param k - non-negative integer
+	 * @return ln(k!)
+	 */
+	static double logFactorial(long k) {
+		if (k < LOG_FACTORIAL.length) return LOG_FACTORIAL[(int) k];
+
+		/* Stirling series, accurate to double precision for k >= 32 */
+		double x = k + 1;
+		double inv = 1 / x;
+		double inv2 = inv * inv;
+		return (x - 0.5) * Math.log(x) - x + 0.5 * Math.log(2 * Math.PI)
+				+ inv * (1.0 / 12 - inv2 * (1.0 / 360 - inv2 * (1.0 / 1260 - inv2 / 1680)));
+	}
+
+	private static final double[] LOG_FACTORIAL = new double[32];
+	static {
+		for (int i = 1; i < LOG_FACTORIAL.length; i++) LOG_FACTORIAL[i] = LOG_FACTORIAL[i - 1] + Math.log(i);
+	}
+
+}
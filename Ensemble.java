@@ -0,0 +1,221 @@
+package virus_Bacteria_Simulation;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import virus_Bacteria_Simulation.StoppingCriterion.STOP_REASON;
+
+/**
+ * Runs independent replicates of a simulation in parallel. Each replicate
+ * is its own SimulationContext, so replicates share nothing but the
+ * parameters. Replicates are split recursively over a work-stealing
+ * ForkJoinPool, so short runs (early extinction) free their thread for
+ * the remaining ones.
+ *
+ * Replicate r is seeded with the r-th nextLong of a RandomStream seeded with
+ * params.seed. Seeds are drawn before any replicate starts, so every
+ * replicate's trajectory depends only on params.seed and r, not on the
+ * number of threads or the order replicates run in.
+ *
+ * For large ensembles, aggregate keeps no replicate: each pool thread adds
+ * the trajectories it runs to its own EnsembleStatistics, and the threads'
+ * statistics are merged at the end.
+ * @author Parker, Huttner
+ *
+ */
+public class Ensemble {
+
+	/* Instance Variables */
+	private ForkJoinPool pool;
+
+	/**
+	 * Creates an ensemble runner using all available processors
+	 */
+	public Ensemble() {
+		this(new ForkJoinPool());
+	}
+
+	/**
+	 * @param pool - pool the replicates run on
+	 */
+	public Ensemble(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Runs replicates to completion
+	 * @param params - parameters shared by all replicates
+	 * @param replicates - number of replicates
+	 * @return finished replicates, in replicate order
+	 */
+	public List<SimulationContext> run(Parameters params, int replicates) {
+		SimulationContext[] results = new SimulationContext[replicates];
+		long[] seeds = seeds(params.seed, replicates);
+		pool.invoke(new Replicates(params, seeds, results, null, 0, replicates));
+		return Arrays.asList(results);
+	}
+
+	/**
+	 * Runs replicates to completion and keeps only their statistics on the
+	 * record_interval grid. A replicate whose final state would hold on
+	 * (see holds) keeps it for the rest of the grid; one stopped otherwise,
+	 * by step_max, the wall clock or full infection, has no samples past
+	 * its end, so later grid times only describe the replicates still
+	 * running there.
+	 * @param params - parameters shared by all replicates, record_interval > 0
+	 * @param replicates - number of replicates
+	 * @param points - number of grid times
+	 * @return statistics of all replicates
+	 */
+	public EnsembleStatistics aggregate(Parameters params, int replicates, int points) {
+		return aggregate(params, seeds(params.seed, replicates), points);
+	}
+
+	/**
+	 * Runs one replicate per seed and keeps only their statistics
+	 * @param params - parameters shared by all replicates, record_interval > 0
+	 * @param seeds - seed of each replicate
+	 * @param points - number of grid times
+	 * @return statistics of all replicates
+	 */
+	public EnsembleStatistics aggregate(final Parameters params, long[] seeds, final int points) {
+		if (params.record_interval <= 0) throw new IllegalArgumentException("aggregation needs a record interval");
+		final List<EnsembleStatistics> partial = Collections.synchronizedList(new ArrayList<EnsembleStatistics>());
+		ThreadLocal<EnsembleStatistics> stats = new ThreadLocal<EnsembleStatistics>() {
+			protected EnsembleStatistics initialValue() {
+				EnsembleStatistics thread_stats = new EnsembleStatistics(params.record_interval, points, TDigest.COMPRESSION);
+				partial.add(thread_stats);
+				return thread_stats;
+			}
+		};
+		pool.invoke(new Replicates(params, seeds, null, stats, 0, seeds.length));
+
+		EnsembleStatistics all = new EnsembleStatistics(params.record_interval, points, TDigest.COMPRESSION);
+		for (EnsembleStatistics thread_stats : partial) all.merge(thread_stats);
+		return all;
+	}
+
+	/**
+	 * @param seed - seed of the ensemble
+	 * @param replicates - number of replicates
+	 * @return seed of each replicate
+	 */
+	static long[] seeds(long seed, int replicates) {
+		long[] seeds = new long[replicates];
+		RandomStream seeder = new RandomStream(seed);
+		for (int r = 0; r < replicates; r++) seeds[r] = seeder.nextLong();
+		return seeds;
+	}
+
+	/**
+	 * Runs one replicate and adds its trajectory to the statistics. A
+	 * replicate whose final state holds keeps it for the rest of the grid.
+	 * @param params - parameters of the replicate, record_interval on the grid
+	 * @param seed - seed of the replicate
+	 * @param stats - statistics to add to
+	 */
+	static void aggregate(Parameters params, long seed, EnsembleStatistics stats) {
+		SimulationContext ctx = new SimulationContext(params, seed);
+		ctx.recorder.addSink(stats.sink());
+		ctx.run();
+		if (holds(ctx.stop_reason)) ctx.recorder.advance(stats.points() * stats.interval(), 0);
+		ctx.recorder.close();
+	}
+
+	/**
+	 * @param reason - why a replicate stopped
+	 * @return whether its final state stands for the rest of the grid: it
+	 * cannot change after extinction or without events, is taken to be
+	 * settled in a steady state, and is the state the ensemble is asked
+	 * about after time_max
+	 */
+	static boolean holds(STOP_REASON reason) {
+		return reason == STOP_REASON.EXTINCT || reason == STOP_REASON.NO_EVENTS || reason == STOP_REASON.STEADY_STATE
+				|| reason == STOP_REASON.TIME;
+	}
+
+	/**
+	 * Shuts down the pool
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Runs an ensemble and prints the final state of each replicate, or
+	 * writes the statistics of the ensemble to a file
+	 * @param args - number of replicates, 1 if absent; with the number of
+	 * grid times and an output file, the replicates are aggregated
+	 */
+	public static void main(String[] args) throws IOException {
+		Parameters params = Sim.getInfo();
+		params.debug = false;
+		int replicates = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+
+		Ensemble ensemble = new Ensemble();
+		if (args.length > 2) {
+			EnsembleStatistics stats = ensemble.aggregate(params, replicates, Integer.parseInt(args[1]));
+			ensemble.shutdown();
+			stats.write(new File(args[2]));
+			return;
+		}
+		List<SimulationContext> results = ensemble.run(params, replicates);
+		ensemble.shutdown();
+
+		System.out.println();
+		System.out.println("Seed: " + params.seed);
+		System.out.println("replicate\tseed\tt\tevents\tbacteria\tphage\tinfected\textinct\tstop");
+		for (int r = 0; r < results.size(); r++) {
+			SimulationContext ctx = results.get(r);
+			System.out.println(r + "\t" + ctx.seed + "\t" + ctx.t + "\t" + ctx.step_sum + "\t" + ctx.bas_size() + "\t"
+					+ ctx.lps_size() + "\t" + ctx.bas_infected + "\t" + ctx.extinct + "\t" + ctx.stop_reason);
+		}
+	}
+
+	/**
+	 * Runs the replicates in [lo, hi), splitting the range in half until a
+	 * single replicate is left
+	 */
+	private static class Replicates extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private Parameters params;
+		private long[] seeds;
+		private SimulationContext[] results; // finished replicates, null when aggregating
+		private ThreadLocal<EnsembleStatistics> stats; // statistics of the running thread, null when keeping replicates
+		private int lo, hi;
+
+		Replicates(Parameters params, long[] seeds, SimulationContext[] results, ThreadLocal<EnsembleStatistics> stats, int lo, int hi) {
+			this.params = params;
+			this.seeds = seeds;
+			this.results = results;
+			this.stats = stats;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		protected void compute() {
+			if (hi - lo == 1) {
+				if (stats != null) {
+					aggregate(params, seeds[lo], stats.get());
+					return;
+				}
+				SimulationContext ctx = new SimulationContext(params, seeds[lo]);
+				ctx.run();
+				results[lo] = ctx;
+				return;
+			}
+			if (hi <= lo) return;
+			int mid = (lo + hi) >>> 1;
+			invokeAll(new Replicates(params, seeds, results, stats, lo, mid), new Replicates(params, seeds, results, stats, mid, hi));
+		}
+	}
+
+}
@@ -0,0 +1,259 @@
+package virus_Bacteria_Simulation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Online statistics of many replicates on a common time grid: for each
+ * graphed series (Recorder columns LPS to INFECTED) and grid time, the
+ * count, mean and variance (Moments) and a TDigest for quantiles. Memory depends on the grid and the digest
+ * compression, not on the number of replicates.
+ *
+ * Replicates are recorded with record_interval equal to the grid interval
+ * and fed through sink(). Statistics of threads or of separate processes
+ * merge into the statistics of all their replicates; the file format is
+ *
+ * 	header: magic "PHEN", version (short), interval, grid times, compression
+ * 	per series and grid time: count, mean, m2, digest
+ *
+ * A NaN sample (mean trait of an empty population) is left out of its
+ * cell, so counts of trait cells may be lower than those of populations.
+ * @author Parker, Huttner
+ *
+ */
+public class EnsembleStatistics {
+
+	/* Class Variables */
+	static final int MAGIC = 0x5048454E; // "PHEN"
+	static final short VERSION = 1;
+	static final int FIRST = Recorder.LPS, SERIES = Recorder.INFECTED - Recorder.LPS + 1; // series kept
+	static final double[] QUANTILES = {0.05, 0.25, 0.5, 0.75, 0.95}; // quantiles in table
+
+	/* Instance Variables */
+	private double interval; // simulation time between grid times
+	private int points; // grid times 0, interval, ..., (points - 1) * interval
+	private double compression;
+	private Moments[] moments; // [series], a cell per grid time
+	private TDigest[][] digest; // [series][grid time], created with the first sample of a cell
+
+	/**
+	 * @param interval - simulation time between grid times
+	 * @param points - number of grid times, starting at 0
+	 * @param compression - TDigest compression of every cell
+	 */
+	public EnsembleStatistics(double interval, int points, double compression) {
+		if (interval <= 0) throw new IllegalArgumentException("grid interval must be positive");
+		this.interval = interval;
+		this.points = points;
+		this.compression = compression;
+		moments = new Moments[SERIES];
+		for (int s = 0; s < SERIES; s++) moments[s] = new Moments(points);
+		digest = new TDigest[SERIES][points];
+	}
+
+	/**
+	 * @return sink adding the samples of one replicate; samples off the
+	 * grid or past its end are ignored
+	 */
+	public TrajectorySink sink() {
+		return new TrajectorySink() {
+			public void write(double[][] columns, int rows) {
+				for (int r = 0; r < rows; r++) {
+					double k = Math.rint(columns[Recorder.T][r] / interval);
+					if (k < 0 || k >= points || Math.abs(k * interval - columns[Recorder.T][r]) > 1e-9 * interval * (k + 1)) continue;
+					for (int s = 0; s < SERIES; s++) add(s, (int) k, columns[FIRST + s][r]);
+				}
+			}
+
+			public void close() {
+			}
+		};
+	}
+
+	/**
+	 * Adds every replicate of another ensemble on the same grid
+	 * @param other - statistics to add, left unchanged
+	 */
+	public void merge(EnsembleStatistics other) {
+		if (other.points != points || other.interval != interval) throw new IllegalArgumentException("ensembles are on different grids");
+		for (int s = 0; s < SERIES; s++) {
+			moments[s].merge(other.moments[s]);
+			for (int k = 0; k < points; k++) {
+				if (other.digest[s][k] == null) continue;
+				if (digest[s][k] == null) digest[s][k] = new TDigest(compression);
+				digest[s][k].merge(other.digest[s][k]);
+			}
+		}
+	}
+
+	/**
+	 * @param series - Recorder column, LPS to INFECTED
+	 * @param k - grid time index
+	 * @return replicates with a sample at the grid time
+	 */
+	public long count(int series, int k) {
+		return moments[series - FIRST].count(k);
+	}
+
+	/**
+	 * @return ensemble mean, NaN without samples
+	 */
+	public double mean(int series, int k) {
+		return moments[series - FIRST].mean(k);
+	}
+
+	/**
+	 * @return sample variance across replicates, NaN for fewer than two
+	 */
+	public double variance(int series, int k) {
+		return moments[series - FIRST].variance(k);
+	}
+
+	/**
+	 * @param q - quantile in [0, 1]
+	 * @return estimated quantile across replicates, NaN without samples
+	 */
+	public double quantile(int series, int k, double q) {
+		TDigest cell = digest[series - FIRST][k];
+		return cell == null ? Double.NaN : cell.quantile(q);
+	}
+
+	/**
+	 * @return number of grid times
+	 */
+	public int points() {
+		return points;
+	}
+
+	/**
+	 * @return simulation time between grid times
+	 */
+	public double interval() {
+		return interval;
+	}
+
+	/**
+	 * Writes the statistics to a temporary file of its own next to the file
+	 * and renames it over the file, so processes writing the same file at
+	 * once each replace it with a complete copy
+	 * @param file - file to write, replaced if it exists
+	 */
+	public void write(File file) throws IOException {
+		File temporary = Files.createTempFile(file.getAbsoluteFile().getParentFile().toPath(), file.getName(), ".tmp").toFile();
+		boolean written = false;
+		try {
+			FileOutputStream stream = new FileOutputStream(temporary);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+			try {
+				out.writeInt(MAGIC);
+				out.writeShort(VERSION);
+				out.writeDouble(interval);
+				out.writeInt(points);
+				out.writeDouble(compression);
+				for (int s = 0; s < SERIES; s++) {
+					for (int k = 0; k < points; k++) {
+						moments[s].write(k, out);
+						if (digest[s][k] != null) digest[s][k].write(out);
+					}
+				}
+				out.flush();
+				stream.getFD().sync();
+			}
+			finally {
+				out.close(); // before the rename, which some platforms refuse on an open file
+			}
+			Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			written = true;
+		}
+		finally {
+			if (!written) Files.deleteIfExists(temporary.toPath());
+		}
+	}
+
+	/**
+	 * @param file - file written by write
+	 * @return statistics in the file
+	 */
+	public static EnsembleStatistics read(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+		try {
+			if (in.readInt() != MAGIC) throw new IOException(file + " is not an ensemble statistics file");
+			short version = in.readShort();
+			if (version != VERSION) throw new IOException("unsupported ensemble statistics version " + version);
+			EnsembleStatistics stats = new EnsembleStatistics(in.readDouble(), in.readInt(), in.readDouble());
+			for (int s = 0; s < SERIES; s++) {
+				for (int k = 0; k < stats.points; k++) {
+					stats.moments[s].read(k, in);
+					if (stats.moments[s].count(k) > 0) stats.digest[s][k] = TDigest.read(in);
+				}
+			}
+			return stats;
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Prints one tab separated line per grid time: t, then for each series
+	 * its count, mean, standard deviation and QUANTILES
+	 * @param out - stream to print to
+	 */
+	public void table(PrintStream out) {
+		StringBuilder sb = new StringBuilder("t");
+		for (int s = 0; s < SERIES; s++) {
+			String name = Recorder.COLUMNS[FIRST + s];
+			sb.append('\t').append(name).append("_n\t").append(name).append("_mean\t").append(name).append("_sd");
+			for (double q : QUANTILES) sb.append('\t').append(name).append("_q").append(Math.round(q * 100));
+		}
+		out.println(sb);
+		for (int k = 0; k < points; k++) {
+			sb.setLength(0);
+			sb.append(k * interval);
+			for (int s = FIRST; s < FIRST + SERIES; s++) {
+				sb.append('\t').append(count(s, k)).append('\t').append(mean(s, k)).append('\t').append(Math.sqrt(variance(s, k)));
+				for (double q : QUANTILES) sb.append('\t').append(quantile(s, k, q));
+			}
+			out.println(sb);
+		}
+	}
+
+	/**
+	 * Merges or prints statistics files
+	 * @param args - "merge", the output file and the files to merge into it;
+	 * or "table" and a file to print as tab separated text
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length >= 3 && args[0].equalsIgnoreCase("merge")) {
+			EnsembleStatistics merged = read(new File(args[2]));
+			for (int i = 3; i < args.length; i++) merged.merge(read(new File(args[i])));
+			merged.write(new File(args[1]));
+		}
+		else if (args.length == 2 && args[0].equalsIgnoreCase("table")) {
+			read(new File(args[1])).table(System.out);
+		}
+		else {
+			System.err.println("usage: EnsembleStatistics merge <output> <input>... | table <input>");
+			System.exit(2);
+		}
+	}
+
+	/**
+	 * Adds one sample to a cell
+	 */
+	private void add(int s, int k, double x) {
+		if (!moments[s].add(k, x)) return;
+		if (digest[s][k] == null) digest[s][k] = new TDigest(compression);
+		digest[s][k].add(x);
+	}
+
+}
@@ -15,6 +15,8 @@ public class Event {
 	double lambda; // The event's exponential distribution lambda variable
 	Organism org; // The organism this event belongs to
 	boolean delete; // This event's validity flag
+	double time; // Absolute simulation time the event fires at
+	int index = -1; // Position in the scheduler's heap
 
 	/**
 	 * Default constructor - creates an empty event
@@ -39,5 +41,19 @@ public class Event {
 		this.type = new_type;
 		delete = false;
 	}
-}
 
+	/**
+	 * Stores a handle to this event in its organism so the event can be
+	 * invalidated without searching the event pool
+	 */
+	void attach() {
+		Event[] handles = org.getEvents();
+		for (int i = 0; i < handles.length; i++) {
+			if (handles[i] == null) {
+				handles[i] = this;
+				return;
+			}
+		}
+		throw new IllegalStateException("no free event handle for " + type);
+	}
+}
@@ -0,0 +1,267 @@
+package virus_Bacteria_Simulation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import virus_Bacteria_Simulation.Organism.EVENT_TYPE;
+
+/**
+ * Binary trace of every event and the population changes it causes. The
+ * simulation thread puts fixed size records into a single producer, single
+ * consumer ring buffer without locking; a background thread drains the ring
+ * into a compact binary file. If the ring is full the simulation waits for
+ * the writer.
+ *
+ * Record kinds, in the order the simulation produces them:
+ * 	EVENT - time, event type and id of the organism the event belongs to
+ * 	PARTNER - id of the other organism chosen by the event (conjugation
+ * 		partner, bacterium an infection was tried on)
+ * 	ADD - an organism entering the bacteria, free phage or prophage
+ * 		population, with its traits and, for prophage, its host
+ * 	REMOVE - an organism leaving a population
+ * 	TRAITS - new traits of a bacterium changed by conjugation
+ * Records before the first EVENT are the starting populations; the records
+ * after an EVENT up to the next one are its effects. The random draws of an
+ * event are recorded through their outcomes (partners, traits of new
+ * organisms), which is what TraceReplayer needs to rebuild the populations.
+ *
+ * Only organism objects are traced. Free phage held in a HybridScheduler
+ * density appear when they become objects again.
+ * @author Parker, Huttner
+ *
+ */
+public class EventTrace {
+
+	/* Class Variables */
+	static final int MAGIC = 0x50484556; // "PHEV"
+	static final short VERSION = 1;
+	static final int EVENT = 0, PARTNER = 1, ADD = 2, REMOVE = 3, TRAITS = 4; // record kinds
+	static final int BACTERIA = 0, FREE = 1, PROPHAGE = 2; // populations
+	static final EVENT_TYPE[] TYPES = EVENT_TYPE.values();
+	private static final int WIDTH = 5; // longs per record: header, id, other, two doubles
+
+	/* Instance Variables */
+	private long[] ring;
+	private int mask; // slots - 1
+	private AtomicLong head = new AtomicLong(); // next slot the writer reads
+	private AtomicLong tail = new AtomicLong(); // next slot the simulation fills
+	private long cached_head; // simulation's last view of head
+	private volatile boolean closed;
+	private volatile IOException failure; // error of the writer thread
+	private FileChannel channel;
+	private ByteBuffer buffer = ByteBuffer.allocate(1 << 16); // encoded records not yet written
+	private long previous_time; // bits of the last EVENT time written
+	private Thread writer;
+
+	/**
+	 * Creates the trace file and starts the writer thread
+	 * @param file - trace file, replaced if it exists
+	 * @param slots - ring capacity in records, rounded up to a power of two
+	 */
+	public EventTrace(File file, int slots) throws IOException {
+		int capacity = Integer.highestOneBit(Math.max(slots - 1, 1)) << 1;
+		ring = new long[capacity * WIDTH];
+		mask = capacity - 1;
+
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.setLength(0);
+		channel = raf.getChannel();
+		buffer.putInt(MAGIC);
+		buffer.putShort(VERSION);
+
+		writer = new Thread(new Runnable() {
+			public void run() {
+				drain();
+			}
+		}, "event-trace " + file.getName());
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Creates the trace file with a ring of 65536 records
+	 * @param file - trace file, replaced if it exists
+	 */
+	public EventTrace(File file) throws IOException {
+		this(file, 1 << 16);
+	}
+
+	/**
+	 * Records an event about to be executed
+	 * @param time - time of the event
+	 * @param type - event type
+	 * @param org - organism the event belongs to
+	 */
+	public void event(double time, EVENT_TYPE type, Organism org) {
+		put(EVENT | type.ordinal() << 8, id(org), 0, Double.doubleToRawLongBits(time), 0);
+	}
+
+	/**
+	 * Records the other organism chosen by the current event
+	 */
+	public void partner(Organism org) {
+		put(PARTNER, id(org), 0, 0, 0);
+	}
+
+	/**
+	 * Records an organism entering a population
+	 * @param population - BACTERIA, FREE or PROPHAGE
+	 */
+	public void added(int population, Organism org) {
+		double sr, enz;
+		long host = -1;
+		if (org instanceof Bacterium) {
+			Bacterium ba = (Bacterium) org;
+			sr = ba.prob_surface;
+			enz = ba.prob_enzymes;
+		}
+		else {
+			Lambda_phage lp = (Lambda_phage) org;
+			sr = lp.prob_surface;
+			enz = lp.prob_enzymes;
+			if (lp.current_ba != null) host = lp.current_ba.id;
+		}
+		put(ADD | population << 8, id(org), host + 1, Double.doubleToRawLongBits(sr), Double.doubleToRawLongBits(enz));
+	}
+
+	/**
+	 * Records an organism leaving a population
+	 * @param population - BACTERIA, FREE or PROPHAGE
+	 */
+	public void removed(int population, Organism org) {
+		put(REMOVE | population << 8, id(org), 0, 0, 0);
+	}
+
+	/**
+	 * Records new traits of a bacterium
+	 */
+	public void traits(Bacterium ba) {
+		put(TRAITS, ba.id, 0, Double.doubleToRawLongBits(ba.prob_surface), Double.doubleToRawLongBits(ba.prob_enzymes));
+	}
+
+	/**
+	 * Waits for the writer to drain the ring and closes the file
+	 */
+	public void close() throws IOException {
+		closed = true;
+		LockSupport.unpark(writer);
+		try {
+			writer.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (failure != null) throw failure;
+	}
+
+	/**
+	 * @return id of a Bacterium or Lambda_phage, -1 for anything else
+	 */
+	private static long id(Organism org) {
+		if (org instanceof Bacterium) return ((Bacterium) org).id;
+		if (org instanceof Lambda_phage) return ((Lambda_phage) org).id;
+		return -1;
+	}
+
+	/**
+	 * Fills the next ring slot, waiting while the ring is full
+	 */
+	private void put(long header, long id, long other, long a, long b) {
+		long t = tail.get();
+		if (t - cached_head > mask) {
+			while (t - (cached_head = head.get()) > mask) {
+				if (failure != null) throw new IllegalStateException("event trace writer failed", failure);
+				LockSupport.unpark(writer);
+				LockSupport.parkNanos(1000);
+			}
+		}
+		int base = (int) (t & mask) * WIDTH;
+		ring[base] = header;
+		ring[base + 1] = id;
+		ring[base + 2] = other;
+		ring[base + 3] = a;
+		ring[base + 4] = b;
+		tail.lazySet(t + 1); // publishes the slot
+	}
+
+	/**
+	 * Writer thread: encodes published records until the trace is closed
+	 * and the ring is empty
+	 */
+	private void drain() {
+		try {
+			long h = head.get();
+			while (true) {
+				long t = tail.get();
+				if (h == t) {
+					if (closed && h == tail.get()) break;
+					flush();
+					LockSupport.parkNanos(100000);
+					continue;
+				}
+				for (; h < t; h++) encode((int) (h & mask) * WIDTH);
+				head.lazySet(h);
+			}
+			flush();
+			channel.close();
+		}
+		catch (IOException e) {
+			failure = e;
+		}
+	}
+
+	/**
+	 * Encodes the record at a ring position:
+	 * a byte holding kind | detail << 3, where detail is the event type or
+	 * population, then EVENT: time bits XOR the previous time as a varint,
+	 * id + 1; PARTNER, REMOVE: id + 1; ADD: id + 1, host + 1, traits as raw
+	 * doubles; TRAITS: id + 1, traits as raw doubles
+	 */
+	private void encode(int base) throws IOException {
+		if (buffer.remaining() < 64) flush();
+		int kind = (int) (ring[base] & 0xFF);
+		int detail = (int) (ring[base] >>> 8);
+		buffer.put((byte) (kind | detail << 3));
+		switch (kind) {
+			case EVENT:
+				putVarint(ring[base + 3] ^ previous_time);
+				previous_time = ring[base + 3];
+				putVarint(ring[base + 1] + 1);
+				break;
+			case ADD:
+				putVarint(ring[base + 1] + 1);
+				putVarint(ring[base + 2]);
+				buffer.putLong(ring[base + 3]);
+				buffer.putLong(ring[base + 4]);
+				break;
+			case TRAITS:
+				putVarint(ring[base + 1] + 1);
+				buffer.putLong(ring[base + 3]);
+				buffer.putLong(ring[base + 4]);
+				break;
+			default:
+				putVarint(ring[base + 1] + 1);
+				break;
+		}
+	}
+
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) channel.write(buffer);
+		buffer.clear();
+	}
+
+	private void putVarint(long value) {
+		while ((value & ~0x7FL) != 0) {
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+}
@@ -3,6 +3,8 @@ package virus_Bacteria_Simulation;
 // Import the Swing classes
 import java.awt.*;
 import java.awt.event.*;
+import java.io.File;
+import java.io.IOException;
 import javax.swing.*;
 
 // Import the JFreeChart classes
@@ -11,16 +13,44 @@ import org.jfree.chart.plot.*;
 import org.jfree.data.xy.DefaultXYDataset;
 import org.jfree.data.xy.XYSeries;
 
+// Import the JFreeSVG classes
+import org.jfree.graphics2d.svg.SVGGraphics2D;
+import org.jfree.graphics2d.svg.SVGUtils;
+
 /**
  * Graph Class to create XY line chart for two data sets
+ *
+ * Series are decimated (see Decimator) before they are handed to the
+ * chart, so drawing costs the same for a run of a thousand samples as for
+ * one of a billion. A window keeps WINDOW_COLUMNS columns, enough to
+ * resize and zoom in a little; render draws a chart straight to a PNG or
+ * SVG file of a given size without opening a window, and works headless.
+ *
+ * A live graph follows a running simulation: it subscribes a LiveSink to
+ * the recorder and a Swing timer polls it on the event dispatch thread
+ * every REPAINT_MS, appending whatever arrived and redrawing once per
+ * tick. It keeps at most 2 * LIVE_POINTS points per series, dropping every
+ * other one when full, so redrawing stays cheap however long the run.
  * @author Parker, Huttner
  *
  */
 public class Graph extends JPanel{
 	
+	/* Class Variables */
+	static final int WINDOW_COLUMNS = 2048; // pixel columns kept for a chart in a window
+	static final int LIVE_POINTS = 1024; // points per series a live graph is sent per doubling of the run
+	static final int REPAINT_MS = 250; // milliseconds between redraws of a live graph
+	
 	private DefaultXYDataset xyDataset = new DefaultXYDataset();// Holds the data
   	private JFreeChart XYChart;// Create chart
   	private ChartPanel XYPanel;// Create panel
+  	
+  	/* Live Graph Variables */
+  	private LiveSink live; // samples of the running simulation, null once finished
+  	private javax.swing.Timer timer; // polls live on the event dispatch thread
+  	private int[] columns; // recorder columns shown
+  	private double[][] points; // shown samples, time first, then one array per column
+  	private int n; // samples in points
 
 
  /**
@@ -31,16 +61,113 @@ public class Graph extends JPanel{
   * @param y_axis
   */
   public Graph(XYSeries[] series, String Title, String x_axis, String y_axis){	  
+	  this(series, Title, x_axis, y_axis, "minmax");
+  }
+  
+  /**
+   * Builds the graph from decimated series
+   * @param series
+   * @param Title
+   * @param x_axis
+   * @param y_axis
+   * @param decimation - "lttb" for largest triangle three buckets, min/max per column otherwise
+   */
+  public Graph(XYSeries[] series, String Title, String x_axis, String y_axis, String decimation){	  
 	
+	  /* Create  the chart */
+	  XYChart = createChart(series, Title, x_axis, y_axis, xyDataset, WINDOW_COLUMNS, decimation);
+	  createPanel();
+  }
+  
+  /**
+   * Builds an empty graph that shows recorder columns while the simulation
+   * runs; call before the run starts
+   * @param recorder - recorder of the simulation to follow
+   * @param columns - Recorder columns to show, e.g. Recorder.LPS
+   * @param Title
+   * @param x_axis
+   * @param y_axis
+   */
+  public Graph(Recorder recorder, int[] columns, String Title, String x_axis, String y_axis){
+	  this.columns = columns.clone();
+	  this.points = new double[columns.length + 1][2 * LIVE_POINTS];
+	  this.live = new LiveSink(columns, LIVE_POINTS);
+	  recorder.addSink(live);
 	  
-	  for(int i = 0; i < series.length; i++){
-		  xyDataset.addSeries(series[i].getKey(), series[i].toArray());
-	  }
+	  XYChart = createChart(new XYSeries[0], Title, x_axis, y_axis, xyDataset, WINDOW_COLUMNS, null);
+	  createPanel();
 	  
-	  /* Create  the chart */
-	  XYChart = ChartFactory.createScatterPlot(
-				Title, x_axis, 
-				y_axis, xyDataset, PlotOrientation.VERTICAL, true, false, false);
+	  timer = new javax.swing.Timer(REPAINT_MS, new ActionListener(){
+		  public void actionPerformed(ActionEvent evt){
+			  update();
+		  }
+	  });
+	  timer.setCoalesce(true);
+	  timer.start();
+  }
+  
+  /**
+   * Replaces what a live graph has shown with the complete series once the
+   * run is over, and stops following it; may be called from any thread
+   * @param series
+   * @param decimation - "lttb" for largest triangle three buckets, min/max per column otherwise
+   */
+  public void finish(final XYSeries[] series, final String decimation){
+	  SwingUtilities.invokeLater(new Runnable(){
+		  public void run(){
+			  if(timer != null) timer.stop();
+			  live = null;
+			  XYChart.setNotify(false);
+			  fill(xyDataset, series, WINDOW_COLUMNS, decimation);
+			  XYChart.setNotify(true);
+		  }
+	  });
+  }
+  
+  /**
+   * Appends the blocks the simulation has sent since the last tick and
+   * redraws once if there were any
+   */
+  private void update(){
+	  if(live == null) return;
+	  boolean changed = false;
+	  double[][] block;
+	  while((block = live.poll()) != null){
+		  for(int r = 0; r < block[0].length; r++){
+			  if(n == points[0].length) thin();
+			  for(int c = 0; c < points.length; c++) points[c][n] = block[c][r];
+			  n++;
+		  }
+		  changed = true;
+	  }
+	  if(changed){
+		  XYChart.setNotify(false);
+		  for(int c = 1; c < points.length; c++){
+			  double[][] xy = new double[2][n];
+			  System.arraycopy(points[0], 0, xy[0], 0, n);
+			  System.arraycopy(points[c], 0, xy[1], 0, n);
+			  xyDataset.addSeries(Recorder.COLUMNS[columns[c - 1]], xy);
+		  }
+		  XYChart.setNotify(true);
+	  }
+	  if(live.done()) timer.stop();
+  }
+  
+  /**
+   * Drops every other shown sample to make room
+   */
+  private void thin(){
+	  int kept = 0;
+	  for(int r = 0; r < n; r += 2, kept++){
+		  for(int c = 0; c < points.length; c++) points[c][kept] = points[c][r];
+	  }
+	  n = kept;
+  }
+  
+  /**
+   * Puts the chart in this panel and the panel in a window
+   */
+  private void createPanel(){
 	
 	  /* Create this panel */
 	  this.setLayout( new GridLayout( 1, 1 ) );
@@ -52,6 +179,54 @@ public class Graph extends JPanel{
   }
   
   
+  /**
+   * Draws a chart to a file without opening a window
+   * @param series
+   * @param Title
+   * @param x_axis
+   * @param y_axis
+   * @param file - image file
+   * @param format - "svg" for an SVG file, PNG otherwise
+   * @param width - image width in pixels, also the columns series are decimated to
+   * @param height - image height in pixels
+   * @param decimation - "lttb" for largest triangle three buckets, min/max per column otherwise
+   */
+  public static void render(XYSeries[] series, String Title, String x_axis, String y_axis,
+		  File file, String format, int width, int height, String decimation) throws IOException {
+	  JFreeChart chart = createChart(series, Title, x_axis, y_axis, new DefaultXYDataset(), width, decimation);
+	  if("svg".equalsIgnoreCase(format)){
+		  SVGGraphics2D g2 = new SVGGraphics2D(width, height);
+		  chart.draw(g2, new Rectangle(width, height));
+		  SVGUtils.writeToSVG(file, g2.getSVGElement());
+	  }
+	  else ChartUtilities.saveChartAsPNG(file, chart, width, height);
+  }
+  
+  /**
+   * Decimates the series into the dataset and creates a scatter plot of it
+   * @param columns - pixel columns of the plot
+   */
+  private static JFreeChart createChart(XYSeries[] series, String Title, String x_axis, String y_axis,
+		  DefaultXYDataset dataset, int columns, String decimation){
+	  fill(dataset, series, columns, decimation);
+	  return ChartFactory.createScatterPlot(
+				Title, x_axis, 
+				y_axis, dataset, PlotOrientation.VERTICAL, true, false, false);
+  }
+  
+  /**
+   * Adds the decimated series to the dataset, replacing series of the same key
+   * @param columns - pixel columns of the plot
+   */
+  private static void fill(DefaultXYDataset dataset, XYSeries[] series, int columns, String decimation){
+	  for(int i = 0; i < series.length; i++){
+		  double[][] xy = series[i].toArray();
+		  if("lttb".equalsIgnoreCase(decimation)) xy = Decimator.lttb(xy, 2 * columns);
+		  else xy = Decimator.minMax(xy, columns);
+		  dataset.addSeries(series[i].getKey(), xy);
+	  }
+  }
+  
   /**
    * creates a frame to display the chart
    *
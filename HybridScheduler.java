@@ -0,0 +1,313 @@
+package virus_Bacteria_Simulation;
+
+import virus_Bacteria_Simulation.Organism.EVENT_TYPE;
+
+/**
+ * Hybrid deterministic / stochastic scheduler. Bacteria and prophage are
+ * always simulated exactly with the next reaction method and the usual
+ * Organism.execute handlers. Once more than CONTINUOUS_ABOVE free phage
+ * exist they are moved into a continuous density per genotype bin, which
+ * follows the ODE
+ *
+ * 	dF/dt = -(rate_denature + rate_infection) F
+ *
+ * between discrete events; phage released by SECRETE and SWITCHPHASE are
+ * added to it as they appear. Infection attempts on bacteria stay discrete,
+ * with the time dependent propensity rate_infection * F(t), so the next
+ * attempt time is drawn exactly from the decaying density. Below
+ * DISCRETE_BELOW the density is rounded back into Lambda_phage objects.
+ * @author Parker, Huttner
+ *
+ */
+public class HybridScheduler implements OrganismScheduler {
+
+	/* Class Variables */
+	static final int CONTINUOUS_ABOVE = 10000; // free phage count at which the density takes over
+	static final int DISCRETE_BELOW = 1000; // density at which free phage become objects again
+	static final double PRUNE_BELOW = 1e-3; // bins with less density than this are dropped
+
+	/* Instance Variables */
+	private SimulationContext ctx;
+	private double decay; // rate at which a free phage leaves the density
+	private NextReactionScheduler exact; // discrete events
+	private PhageBins density; // free phage density per genotype, in units of scale
+	private double scale = 1; // density of a bin is its count times scale
+	private double decay_time; // time scale was last brought up to date
+	private double sum_sr, sum_enz; // trait sums of the density, in units of scale
+	private int prune_at = 1024; // bin count that triggers pruning
+	private boolean continuous; // free phage are held in the density
+	private Reservoir reservoir = new Reservoir(); // stands in for the phage of an infection attempt
+	private Event attempt = new Event(); // reused infection attempt event
+	private double[] traits = new double[2]; // scratch traits of mutated progeny
+
+	/**
+	 * @param ctx - simulation whose events are scheduled
+	 * @param density - empty genotype bins for the continuous free phage
+	 */
+	public HybridScheduler(SimulationContext ctx, PhageBins density) {
+		this.ctx = ctx;
+		this.exact = new NextReactionScheduler(ctx);
+		this.density = density;
+		attempt.org = reservoir;
+		attempt.type = EVENT_TYPE.INFECT;
+		attempt.lambda = ctx.bio.rate_infection;
+		decay = ctx.bio.rate_denature + ctx.bio.rate_infection;
+	}
+
+	public void add(Organism org, double lambda, EVENT_TYPE type) {
+		exact.add(org, lambda, type);
+	}
+
+	public void addAll(Organism[] orgs, int n, double[] lambdas, EVENT_TYPE[] types) {
+		exact.addAll(orgs, n, lambdas, types);
+	}
+
+	public void cancel(Organism org) {
+		exact.cancel(org);
+	}
+
+	/**
+	 * @return whether free phage are held in the density, so progeny go to it
+	 * through addProgeny instead of becoming Lambda_phage objects
+	 */
+	public boolean continuous() {
+		return continuous;
+	}
+
+	/**
+	 * Adds n free progeny of a phage straight to the density, mutated the
+	 * way Lambda_phage.burst mutates them, without creating their objects
+	 * or scheduling their events
+	 * @param sr - parent's prob_surface
+	 * @param enz - parent's prob_enzymes
+	 * @param n - number of progeny
+	 */
+	public void addProgeny(double sr, double enz, int n) {
+		advance();
+		int mutants = Distributions.binomial(ctx.randy, n, ctx.bio.mutate_prob);
+		for (int i = 0; i < mutants; i++) {
+			traits[0] = sr;
+			traits[1] = enz;
+			Lambda_phage.perturb(ctx.bio, ctx.randy, traits);
+			fold(traits[0], traits[1], 1);
+		}
+		if (n > mutants) fold(sr, enz, n - mutants);
+		if (density.bins > prune_at) prune();
+	}
+
+	/**
+	 * Switches representation if needed, then returns whichever comes first:
+	 * the next discrete event or the next infection attempt from the density
+	 */
+	public Event next() {
+		advance();
+		if (continuous) {
+			absorb();
+			if (density.total * scale < DISCRETE_BELOW) release();
+		}
+		else if (ctx.lps.size() > CONTINUOUS_ABOVE) {
+			continuous = true;
+			absorb();
+		}
+
+		Event evt = exact.next();
+		if (!continuous) return evt;
+
+		/* Next arrival of the inhomogeneous infection process */
+		double propensity = ctx.bio.rate_infection * density.total * scale;
+		double target = ctx.randy.nextExponential() * decay / propensity;
+		if (target >= 1) return evt; // no further attempt before the density is gone
+		double time = ctx.t - Math.log(1 - target) / decay;
+
+		if (evt != null && evt.time <= time) return evt;
+		attempt.time = time;
+		attempt.delete = false;
+		return attempt;
+	}
+
+	public void fired(Event evt) {
+		if (evt != attempt) exact.fired(evt);
+	}
+
+	/**
+	 * Draws new firing times for the discrete events; infection attempts
+	 * from the density are drawn afresh on every call to next anyway
+	 */
+	public void redraw() {
+		exact.redraw();
+	}
+
+	/**
+	 * @return number of discrete events plus the events the density stands for
+	 */
+	public int size() {
+		return exact.size() + 2 * free();
+	}
+
+	/**
+	 * @return free phage held in the density, rounded
+	 */
+	public int free() {
+		return (int) Math.round(density.total * current());
+	}
+
+	/**
+	 * @return sum of prob_surface over the density
+	 */
+	public double sumSurface() {
+		return sum_sr * current();
+	}
+
+	/**
+	 * @return sum of prob_enzymes over the density
+	 */
+	public double sumEnzymes() {
+		return sum_enz * current();
+	}
+
+	/**
+	 * Writes the discrete events and the density exactly as stored, without
+	 * bringing the density up to date, so saving never changes the run
+	 */
+	public void save(Snapshot out) {
+		exact.save(out);
+		density.save(out);
+		out.putDouble(scale);
+		out.putDouble(decay_time);
+		out.putDouble(sum_sr);
+		out.putDouble(sum_enz);
+		out.putInt(prune_at);
+		out.putBoolean(continuous);
+	}
+
+	public void restore(Snapshot in) {
+		exact.restore(in);
+		density.restore(in);
+		scale = in.getDouble();
+		decay_time = in.getDouble();
+		sum_sr = in.getDouble();
+		sum_enz = in.getDouble();
+		prune_at = in.getInt();
+		continuous = in.getBoolean();
+	}
+
+	/**
+	 * @return scale at the current time, leaving the stored scale as it is,
+	 * so reading the density never changes the run
+	 */
+	private double current() {
+		if (ctx.t <= decay_time) return scale;
+		return scale * Math.exp(-decay * (ctx.t - decay_time));
+	}
+
+	/**
+	 * Brings the density up to the current time with the exact ODE solution
+	 */
+	private void advance() {
+		if (ctx.t <= decay_time) return;
+		scale *= Math.exp(-decay * (ctx.t - decay_time));
+		decay_time = ctx.t;
+		if (scale < 1e-200) rescale();
+	}
+
+	/**
+	 * Moves all free Lambda_phage objects into the density
+	 */
+	private void absorb() {
+		while (ctx.lps.size() > 0) {
+			Lambda_phage lp = ctx.lps.get(ctx.lps.size() - 1);
+			exact.cancel(lp);
+			ctx.lps.remove(lp);
+			ctx.lps_stats.remove(lp.prob_surface, lp.prob_enzymes);
+			fold(lp.prob_surface, lp.prob_enzymes, 1);
+		}
+		if (density.bins > prune_at) prune();
+	}
+
+	/**
+	 * Adds n free phage to the density at the current scale
+	 * @param sr - prob_surface, quantized here
+	 * @param enz - prob_enzymes, quantized here
+	 */
+	private void fold(double sr, double enz, int n) {
+		sr = density.quantize(sr);
+		enz = density.quantize(enz);
+		density.add(sr, enz, n / scale);
+		sum_sr += n * sr / scale;
+		sum_enz += n * enz / scale;
+	}
+
+	/**
+	 * Rounds the density back into free Lambda_phage objects
+	 */
+	private void release() {
+		for (int bin = 0; bin < density.bins; bin++) {
+			double amount = density.counts[bin] * scale;
+			int n = (int) amount;
+			if (ctx.randy.nextDouble() < amount - n) n++;
+			for (int i = 0; i < n; i++)
+				ctx.lps.add(new Lambda_phage(ctx, density.surface[bin], density.enzymes[bin], false));
+		}
+		density.clear();
+		sum_sr = sum_enz = 0;
+		scale = 1;
+		continuous = false;
+	}
+
+	/**
+	 * Folds scale into the stored counts
+	 */
+	private void rescale() {
+		density.scale(scale);
+		sum_sr *= scale;
+		sum_enz *= scale;
+		scale = 1;
+	}
+
+	/**
+	 * Drops bins whose density has decayed below PRUNE_BELOW
+	 */
+	private void prune() {
+		rescale();
+		int bin = 0;
+		while (bin < density.bins) {
+			if (density.counts[bin] < PRUNE_BELOW) {
+				sum_sr -= density.counts[bin] * density.surface[bin];
+				sum_enz -= density.counts[bin] * density.enzymes[bin];
+				density.drop(bin); // moves the last bin into this one
+			}
+			else bin++;
+		}
+		prune_at = Math.max(1024, 2 * density.bins);
+	}
+
+	/**
+	 * A free phage drawn from the density for one infection attempt. The
+	 * attempt runs through Lambda_phage.infect on a new phage object, built
+	 * without events since infect would only cancel them; the density
+	 * itself already loses infecting phage through the ODE.
+	 */
+	private class Reservoir implements Organism {
+
+		public void execute(EVENT_TYPE type) {
+			advance();
+			int bin = density.find(ctx.randy.nextDouble() * density.total);
+			Lambda_phage lp = new Lambda_phage(ctx, ctx.next_id++, density.surface[bin], density.enzymes[bin]);
+			ctx.lps_stats.add(lp.prob_surface, lp.prob_enzymes);
+			ctx.lps.add(lp);
+			lp.infect();
+		}
+
+		public Event[] getEvents() {
+			return null;
+		}
+
+		public int getSlot() {
+			return -1;
+		}
+
+		public void setSlot(int slot) {
+		}
+	}
+
+}
@@ -0,0 +1,281 @@
+package virus_Bacteria_Simulation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import virus_Bacteria_Simulation.Organism.EVENT_TYPE;
+
+/**
+ * Checks the consistency of a simulation on a sample of steps instead of
+ * after every event. A check recounts infected bacteria, recomputes the
+ * trait statistics, checks that every organism holds exactly its live
+ * events, and checks the prophage / host links in both directions.
+ *
+ * Checks run every N events, or after each event with a probability p, in
+ * which case the gaps between checks are drawn from a geometric
+ * distribution with a stream of the checker's own, so checking never
+ * changes the trajectory. A failed check throws IllegalStateException
+ * listing every violated invariant and the last CONTEXT events.
+ * @author Parker, Huttner
+ *
+ */
+public class InvariantChecker {
+
+	/* Class Variables */
+	static final int CONTEXT = 16; // recent events reported with a violation
+	static final double TOLERANCE = 1e-6; // allowed drift of a running sum, per organism
+
+	/* Instance Variables */
+	private SimulationContext ctx;
+	private int every; // events between checks, 0 when probabilistic or off
+	private double probability; // chance of a check after each event, 0 when by count
+	private RandomStream rand; // draws gaps between probabilistic checks
+	private long events; // events seen
+	private long countdown; // events until the next check
+	private double[] recent_time = new double[CONTEXT];
+	private EVENT_TYPE[] recent_type = new EVENT_TYPE[CONTEXT];
+	private long[] recent_org = new long[CONTEXT];
+
+	/**
+	 * @param ctx - simulation to check
+	 * @param every - events between checks, 0 for none
+	 * @param probability - chance of a check after each event, used instead of every if positive
+	 */
+	public InvariantChecker(SimulationContext ctx, int every, double probability) {
+		this.ctx = ctx;
+		this.every = Math.max(every, 0);
+		this.probability = Math.min(probability, 1);
+		this.rand = new RandomStream(ctx.seed ^ 0x5DEECE66DL);
+		countdown = gap();
+	}
+
+	/**
+	 * Called after each executed event
+	 * @param time - time of the event
+	 * @param type - event type
+	 * @param org - organism the event belonged to
+	 */
+	public void executed(double time, EVENT_TYPE type, Organism org) {
+		int i = (int) (events++ % CONTEXT);
+		recent_time[i] = time;
+		recent_type[i] = type;
+		recent_org[i] = id(org);
+		if (--countdown == 0) {
+			countdown = gap();
+			check();
+		}
+	}
+
+	/**
+	 * Called after each tau leap
+	 * @param fired - events fired by the leap
+	 */
+	public void leaped(long fired) {
+		events += fired;
+		countdown -= fired;
+		if (countdown <= 0) {
+			countdown = gap();
+			check();
+		}
+	}
+
+	/**
+	 * Checks every invariant now
+	 * @throws IllegalStateException listing the violations and recent events
+	 */
+	public void check() {
+		List<String> violations = new ArrayList<String>();
+		if (ctx.compact != null) checkCompact(violations);
+		else checkObjects(violations);
+		if (!violations.isEmpty()) throw new IllegalStateException(report(violations));
+	}
+
+	/**
+	 * Writes the checking position to a snapshot
+	 */
+	void save(Snapshot out) {
+		rand.save(out);
+		out.putLong(events);
+		out.putLong(countdown);
+	}
+
+	/**
+	 * Continues checking from a position written by save. Events before the
+	 * snapshot are not listed in reports.
+	 */
+	void restore(Snapshot in) {
+		rand = RandomStream.restore(in);
+		events = in.getLong();
+		countdown = in.getLong();
+	}
+
+	/**
+	 * @return events until the next check, Long.MAX_VALUE if checks are off
+	 */
+	private long gap() {
+		if (probability > 0) {
+			if (probability >= 1) return 1;
+			return 1 + (long) Math.floor(Math.log(1 - rand.nextDouble()) / Math.log(1 - probability));
+		}
+		if (every > 0) return every;
+		return Long.MAX_VALUE;
+	}
+
+	private void checkObjects(List<String> violations) {
+		Scheduler scheduler = ctx.scheduler;
+		boolean handles = scheduler instanceof NextReactionScheduler || scheduler instanceof DirectScheduler
+				|| scheduler instanceof HybridScheduler;
+		double bas_sr = 0, bas_enz = 0, lps_sr = 0, lps_enz = 0;
+		int infected = 0;
+
+		for (Bacterium ba : ctx.bas) {
+			bas_sr += ba.prob_surface;
+			bas_enz += ba.prob_enzymes;
+			if (ba.infected) {
+				infected++;
+				if (ba.lp == null || ba.lp.current_ba != ba || !member(ctx.pro, ba.lp))
+					violations.add("bacterium " + ba.id + " is infected but its prophage does not point back to it");
+			}
+			else if (ba.lp != null) violations.add("bacterium " + ba.id + " is not infected but holds phage " + ba.lp.id);
+			if (handles) checkEvents(violations, ba, "bacterium", ba.id, 3, EVENT_TYPE.DEATH, EVENT_TYPE.CONJUGATION);
+		}
+		for (Lambda_phage lp : ctx.lps) {
+			lps_sr += lp.prob_surface;
+			lps_enz += lp.prob_enzymes;
+			if (lp.current_ba != null) violations.add("free phage " + lp.id + " has host " + lp.current_ba.id);
+			if (handles) checkEvents(violations, lp, "free phage", lp.id, 2, EVENT_TYPE.DENATURE, EVENT_TYPE.INFECT);
+		}
+		for (Lambda_phage lp : ctx.pro) {
+			lps_sr += lp.prob_surface;
+			lps_enz += lp.prob_enzymes;
+			Bacterium host = lp.current_ba;
+			if (host == null || host.lp != lp || !host.infected || !member(ctx.bas, host))
+				violations.add("prophage " + lp.id + " is not held by a live infected host");
+			if (handles) checkEvents(violations, lp, "prophage", lp.id, 2, EVENT_TYPE.SWITCHPHASE, EVENT_TYPE.SECRETE);
+		}
+
+		if (scheduler instanceof NextReactionScheduler || scheduler instanceof DirectScheduler) {
+			int expected = 3 * ctx.bas.size() + 2 * ctx.lps.size() + 2 * ctx.pro.size();
+			if (scheduler.size() != expected)
+				violations.add("scheduler holds " + scheduler.size() + " events, organisms own " + expected);
+		}
+		checkInfected(violations, infected);
+		checkSums(violations, bas_sr, bas_enz, ctx.bas.size(), lps_sr, lps_enz, ctx.lps.size() + ctx.pro.size());
+	}
+
+	private void checkCompact(List<String> violations) {
+		CompactPopulation pop = ctx.compact;
+		double bas_sr = 0, bas_enz = 0, lps_sr = 0, lps_enz = 0;
+		int infected = 0;
+
+		for (int b = 0; b < pop.bacteria; b++) {
+			bas_sr += pop.ba_surface[b];
+			bas_enz += pop.ba_enzymes[b];
+			int p = pop.ba_prophage[b];
+			if (p >= 0) {
+				infected++;
+				if (p >= pop.prophage || pop.pro_host[p] != b)
+					violations.add("bacterium " + b + " links to prophage " + p + " which does not link back");
+			}
+		}
+		for (int p = 0; p < pop.prophage; p++) {
+			lps_sr += pop.pro_surface[p];
+			lps_enz += pop.pro_enzymes[p];
+			int b = pop.pro_host[p];
+			if (b < 0 || b >= pop.bacteria || pop.ba_prophage[b] != p)
+				violations.add("prophage " + p + " links to bacterium " + b + " which does not link back");
+		}
+		if (pop.bins != null) {
+			double total = 0;
+			for (int bin = 0; bin < pop.bins.bins; bin++) {
+				total += pop.bins.counts[bin];
+				lps_sr += pop.bins.counts[bin] * pop.bins.surface[bin];
+				lps_enz += pop.bins.counts[bin] * pop.bins.enzymes[bin];
+			}
+			if (total != pop.free) violations.add("genotype bins hold " + total + " phage, free count is " + pop.free);
+		}
+		else {
+			for (int f = 0; f < pop.free; f++) {
+				lps_sr += pop.lp_surface[f];
+				lps_enz += pop.lp_enzymes[f];
+			}
+		}
+
+		checkInfected(violations, infected);
+		checkSums(violations, bas_sr, bas_enz, pop.bacteria, lps_sr, lps_enz, pop.free + pop.prophage);
+	}
+
+	/**
+	 * Checks that an organism holds exactly its live events, all of the two
+	 * or three event types of its population
+	 */
+	private void checkEvents(List<String> violations, Organism org, String kind, long id, int expected,
+			EVENT_TYPE first, EVENT_TYPE last) {
+		int live = 0;
+		for (Event evt : org.getEvents()) {
+			if (evt == null) continue;
+			live++;
+			if (evt.org != org || evt.delete || evt.type.ordinal() < first.ordinal() || evt.type.ordinal() > last.ordinal())
+				violations.add(kind + " " + id + " holds an invalid " + evt.type + " event");
+		}
+		if (live != expected) violations.add(kind + " " + id + " holds " + live + " live events, expected " + expected);
+	}
+
+	private void checkInfected(List<String> violations, int infected) {
+		if (ctx.bas_infected != infected)
+			violations.add("bas_infected is " + ctx.bas_infected + ", recount is " + infected);
+	}
+
+	private void checkSums(List<String> violations, double bas_sr, double bas_enz, int bacteria,
+			double lps_sr, double lps_enz, int phage) {
+		if (ctx.bas_stats.count() != bacteria)
+			violations.add("bacteria statistics count " + ctx.bas_stats.count() + ", recount is " + bacteria);
+		if (ctx.lps_stats.count() != phage)
+			violations.add("phage statistics count " + ctx.lps_stats.count() + ", recount is " + phage);
+		compare(violations, "bas_sum_sr", ctx.bas_stats.sum(TraitStatistics.SURFACE), bas_sr, bacteria);
+		compare(violations, "bas_sum_enz", ctx.bas_stats.sum(TraitStatistics.ENZYMES), bas_enz, bacteria);
+		compare(violations, "lps_sum_sr", ctx.lps_stats.sum(TraitStatistics.SURFACE), lps_sr, phage);
+		compare(violations, "lps_sum_enz", ctx.lps_stats.sum(TraitStatistics.ENZYMES), lps_enz, phage);
+	}
+
+	private static void compare(List<String> violations, String name, double running, double recomputed, int count) {
+		if (Math.abs(running - recomputed) > TOLERANCE * Math.max(count, 1))
+			violations.add(name + " is " + running + ", recomputed " + recomputed);
+	}
+
+	/**
+	 * @return true if the organism is in the population
+	 */
+	private static <T extends Organism> boolean member(Population<T> population, T org) {
+		int slot = org.getSlot();
+		return slot >= 0 && slot < population.size() && population.get(slot) == org;
+	}
+
+	/**
+	 * @return violations followed by the most recent events, oldest first
+	 */
+	private String report(List<String> violations) {
+		StringBuilder sb = new StringBuilder("invariant violated after event " + events + " at t = " + ctx.t);
+		if (ctx.trace != null) sb.append(" (replay the trace to event ").append(events).append(")");
+		for (String violation : violations) sb.append("\n\t").append(violation);
+		sb.append("\n\trecent events:");
+		long first = Math.max(0, events - CONTEXT);
+		for (long e = first; e < events; e++) {
+			int i = (int) (e % CONTEXT);
+			if (recent_type[i] == null) continue;
+			sb.append("\n\t\t").append(e + 1).append(" t = ").append(recent_time[i]).append(' ')
+					.append(recent_type[i]).append(" org ").append(recent_org[i]);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return id of a Bacterium or Lambda_phage, the handle of a compact organism
+	 */
+	private static long id(Organism org) {
+		if (org instanceof Bacterium) return ((Bacterium) org).id;
+		if (org instanceof Lambda_phage) return ((Lambda_phage) org).id;
+		return org.getSlot();
+	}
+
+}
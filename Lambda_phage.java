@@ -1,5 +1,8 @@
 package virus_Bacteria_Simulation;
 
+import java.util.Arrays;
+import java.util.Random;
+
 /**
  * Creates new virus and adds appropriate events to event pool.
  * 
@@ -9,7 +12,7 @@ package virus_Bacteria_Simulation;
 public class Lambda_phage implements Organism {
 
 	
-	/* Class Variables */
+	/* Class Variables (defaults of Biology) */
 	static final int progeny = 150; // # progeny for phage lysis
 	static final double rate_denature = 0.5;
 	static final double rate_infection = 11.0;
@@ -18,9 +21,14 @@ public class Lambda_phage implements Organism {
 	static final double mutate_prob = 0.06;
 	static final double mutate_helps = 0.33;
 	static final double mutate_amount = 0.2; // "Amount" mutation helps
+	static final EVENT_TYPE[] free_types = {EVENT_TYPE.DENATURE, EVENT_TYPE.INFECT}; // events of a free virus
 	
 	/*Instance Variables */
+	SimulationContext ctx; // simulation this virus lives in
+	long id; // unique within the simulation
 	Bacterium current_ba; // If a prophage, it is inside this bacterium
+	int slot = -1; // position in free phage or prophage population
+	Event[] events = new Event[2]; // handles to live events
 
 	double prob_surface;
 	double prob_enzymes;
@@ -28,67 +36,79 @@ public class Lambda_phage implements Organism {
 
 	/**
 	 * Default constructor for new viruses
+	 * @param ctx - simulation the virus lives in
 	 */
-	public Lambda_phage() {
+	public Lambda_phage(SimulationContext ctx) {
 		
+		this.ctx = ctx;
+		this.id = ctx.next_id++;
 		current_ba = null;
 		
 		/* generate initial probabilities */
-		this.prob_surface = ((double) Sim.randy.nextInt(6)) / 10.0d;
-		this.prob_enzymes = ((double) Sim.randy.nextInt(6)) / 10.0d;
+		this.prob_surface = ((double) ctx.randy.nextInt(6)) / 10.0d;
+		this.prob_enzymes = ((double) ctx.randy.nextInt(6)) / 10.0d;
 		
 		/* add events */
-		Sim.events.add(new Event(this, rate_denature, EVENT_TYPE.DENATURE)); 
-		Sim.events.add(new Event(this, rate_infection,EVENT_TYPE.INFECT)); 
+		ctx.org_scheduler.add(this, ctx.bio.rate_denature, EVENT_TYPE.DENATURE);
+		ctx.org_scheduler.add(this, ctx.bio.rate_infection, EVENT_TYPE.INFECT);
 
 		/* update simulation counters */
-		Sim.lps_sum_sr += this.prob_surface;
-		Sim.lps_sum_enz += this.prob_enzymes;
+		ctx.lps_stats.add(this.prob_surface, this.prob_enzymes);
 	}
 
 	/**
 	 * Constructor for lytic or lysogenic virus progeny
+	 * @param ctx - simulation the virus lives in
+	 * @param prob_surface - probability of overcoming bacterial surface receptor defence
+	 * @param prob_enzymes - probability of overcomng bacterial enzyme defence
+	 */
+	public Lambda_phage(SimulationContext ctx, double prob_surface, double prob_enzymes) {
+		this(ctx, prob_surface, prob_enzymes, true);
+	}
+
+	/**
+	 * Constructor for free virus, optionally skipping the mutation model when
+	 * a virus is recreated with known probabilities rather than born
+	 * @param ctx - simulation the virus lives in
 	 * @param prob_surface - probability of overcoming bacterial surface receptor defence
 	 * @param prob_enzymes - probability of overcomng bacterial enzyme defence
+	 * @param mutate - apply the progeny mutation model
 	 */
-	public Lambda_phage(double prob_surface, double prob_enzymes) {
+	public Lambda_phage(SimulationContext ctx, double prob_surface, double prob_enzymes, boolean mutate) {
 		
+		this.ctx = ctx;
+		this.id = ctx.next_id++;
 		current_ba = null;
 		
-		/* check for mutation probability */
-		if (mutate_prob >= Sim.randy.nextDouble()) { 
-			double new_prob_surface, new_prob_enzymes;
-			
-			/* check for helpful mutation probability */
-			if (Sim.randy.nextDouble() > mutate_helps) {
-				new_prob_surface = prob_surface + Sim.randy.nextDouble()
-						* mutate_amount * (1 - prob_surface);
-				new_prob_enzymes = prob_enzymes + Sim.randy.nextDouble()
-						* mutate_amount * (prob_surface);
-			
-			/* check for harmful mutation probability */
-			} else { // If mutation hurts
-				new_prob_surface = prob_surface - Sim.randy.nextDouble()
-						* mutate_amount * (1 - prob_enzymes);
-				new_prob_enzymes = prob_enzymes - Sim.randy.nextDouble()
-						* mutate_amount * (prob_enzymes);
-			}
-			this.prob_surface = new_prob_surface;
-			this.prob_enzymes = new_prob_enzymes;
-			
-		/* mutation does not occur */
-		} else { 
-			this.prob_surface = prob_surface;
-			this.prob_enzymes = prob_enzymes;
-		}
+		/* check for mutation */
+		double[] traits = {prob_surface, prob_enzymes};
+		if (mutate) mutate(ctx.bio, ctx.randy, traits);
+		this.prob_surface = traits[0];
+		this.prob_enzymes = traits[1];
 
 		/* add events */
-		Sim.events.add(new Event(this, rate_denature, EVENT_TYPE.DENATURE)); 
-		Sim.events.add(new Event(this, rate_infection,EVENT_TYPE.INFECT)); 
+		ctx.org_scheduler.add(this, ctx.bio.rate_denature, EVENT_TYPE.DENATURE);
+		ctx.org_scheduler.add(this, ctx.bio.rate_infection, EVENT_TYPE.INFECT);
 
 		/* update simulation counters */
-		Sim.lps_sum_sr += this.prob_surface;
-		Sim.lps_sum_enz += this.prob_enzymes;
+		ctx.lps_stats.add(this.prob_surface, this.prob_enzymes);
+	}
+
+	/**
+	 * Recreates a virus from a snapshot, or creates one of a burst. Its
+	 * events, host, population and the running statistics are set up
+	 * separately.
+	 * @param ctx - simulation the virus lives in
+	 * @param id - id of the saved virus
+	 * @param prob_surface - probability of overcoming bacterial surface receptor defence
+	 * @param prob_enzymes - probability of overcomng bacterial enzyme defence
+	 */
+	Lambda_phage(SimulationContext ctx, long id, double prob_surface, double prob_enzymes) {
+		this.ctx = ctx;
+		this.id = id;
+		current_ba = null;
+		this.prob_surface = prob_surface;
+		this.prob_enzymes = prob_enzymes;
 	}
 
 	/**
@@ -99,19 +119,65 @@ public class Lambda_phage implements Organism {
 	 */
 	public Lambda_phage(Lambda_phage old_lps, Bacterium new_ba) { 
 
+		ctx = old_lps.ctx;
+		id = ctx.next_id++;
 		current_ba = new_ba;
 		
 		this.prob_surface = old_lps.prob_surface;
 		this.prob_enzymes = old_lps.prob_enzymes;
 
 		/* Create events */
-		Sim.events.add(new Event(this, rate_switch, EVENT_TYPE.SWITCHPHASE));
-		Sim.events.add(new Event(this, rate_secrete, EVENT_TYPE.SECRETE));
+		ctx.org_scheduler.add(this, ctx.bio.rate_switch, EVENT_TYPE.SWITCHPHASE);
+		ctx.org_scheduler.add(this, ctx.bio.rate_secrete, EVENT_TYPE.SECRETE);
 
 		/* update simulation counters */
-		Sim.lps_sum_sr += this.prob_surface;
-		Sim.lps_sum_enz += this.prob_enzymes;
-		Sim.bas_infected++;
+		ctx.lps_stats.add(this.prob_surface, this.prob_enzymes);
+		ctx.bas_infected++;
+	}
+
+	/**
+	 * Applies the progeny mutation model to a pair of resistance probabilities
+	 * @param bio - mutation model
+	 * @param rand - random number generator
+	 * @param traits - {prob_surface, prob_enzymes}, updated in place
+	 * @return true if a mutation occurred
+	 */
+	static boolean mutate(Biology bio, Random rand, double[] traits) {
+
+		/* check for mutation probability */
+		if (bio.mutate_prob >= rand.nextDouble()) { 
+			perturb(bio, rand, traits);
+			return true;
+		}
+		
+		/* mutation does not occur */
+		return false;
+	}
+
+	/**
+	 * Mutates a pair of resistance probabilities, given that a mutation occurs
+	 * @param bio - mutation model
+	 * @param rand - random number generator
+	 * @param traits - {prob_surface, prob_enzymes}, updated in place
+	 */
+	static void perturb(Biology bio, Random rand, double[] traits) {
+		double prob_surface = traits[0];
+		double prob_enzymes = traits[1];
+
+		/* check for helpful mutation probability */
+		if (rand.nextDouble() > bio.mutate_helps) {
+			traits[0] = prob_surface + rand.nextDouble()
+					* bio.mutate_amount * (1 - prob_surface);
+			traits[1] = prob_enzymes + rand.nextDouble()
+					* bio.mutate_amount * (prob_surface);
+		
+		/* check for harmful mutation probability */
+		} else { // If mutation hurts
+			traits[0] = prob_surface - rand.nextDouble()
+					* bio.mutate_amount * (1 - prob_enzymes);
+			traits[1] = prob_enzymes - rand.nextDouble()
+					* bio.mutate_amount * (prob_enzymes);
+		}
 	}
 
 	/**
@@ -139,9 +205,21 @@ public class Lambda_phage implements Organism {
 		
 	}
 
+	public Event[] getEvents() {
+		return events;
+	}
+
+	public int getSlot() {
+		return slot;
+	}
+
+	public void setSlot(int slot) {
+		this.slot = slot;
+	}
+
 	/**
-	 * DENATURE -Invalidate all events for this virus -Remove virus from virus
-	 * vector
+	 * DENATURE -Invalidate all events for this virus -Remove virus from free
+	 * phage population
 	 * @return true if virus denatured, false otherwise.
 	 */
 	public boolean denature() {
@@ -150,18 +228,11 @@ public class Lambda_phage implements Organism {
 		if (current_ba == null) { 
 
 			/* Remove all events related to this virus */
-			for (int i = 0; i < Sim.events.size(); i++) {
-				if (Sim.events.elementAt(i).org.equals(this))
-					Sim.events.elementAt(i).delete = true;
-			}
+			ctx.org_scheduler.cancel(this);
 			
-			/* Remove this virus from lambda vector */
-			for (int i = 0; i < Sim.lps.size(); i++) {
-				if (Sim.lps.elementAt(i).equals(this)) {
-					Sim.lps.remove(i);
-					Sim.lps_sum_sr -= this.prob_surface;
-					Sim.lps_sum_enz -= this.prob_enzymes;
-				}
+			/* Remove this virus from free phage population */
+			if (ctx.lps.remove(this)) {
+				ctx.lps_stats.remove(this.prob_surface, this.prob_enzymes);
 			}
 			return true;
 		}
@@ -176,18 +247,16 @@ public class Lambda_phage implements Organism {
 	 */
 	public boolean infect() {
 		/* Remove all events related to this virus */
-		for (int i = 0; i < Sim.events.size(); i++)
-			if (Sim.events.elementAt(i).org.equals(this))
-				Sim.events.elementAt(i).delete = true;
+		ctx.org_scheduler.cancel(this);
 
 		/* Choose a bacteria to infect */
-		Bacterium chosen_bacterium = Sim.bas.get(Sim.randy.nextInt(Sim.bas
-				.size()));
+		Bacterium chosen_bacterium = ctx.bas.sample(ctx.randy);
+		if (ctx.trace != null) ctx.trace.partner(chosen_bacterium);
 
 		/* check probability of successful infection */
-		if ((((1 - chosen_bacterium.prob_surface) * this.prob_surface) >= Sim.randy
+		if ((((1 - chosen_bacterium.prob_surface) * this.prob_surface) >= ctx.randy
 				.nextDouble())
-				&& (((1 - chosen_bacterium.prob_enzymes) * this.prob_enzymes) >= Sim.randy
+				&& (((1 - chosen_bacterium.prob_enzymes) * this.prob_enzymes) >= ctx.randy
 						.nextDouble()) && !chosen_bacterium.infected) {
 
 			/* Update virus object */
@@ -197,12 +266,16 @@ public class Lambda_phage implements Organism {
 			chosen_bacterium.infected = true;
 			chosen_bacterium.lp = this;
 
+			/* Move virus from free phage to prophage population */
+			ctx.lps.remove(this);
+			ctx.pro.add(this);
+
 			/* Update bas_infected DataSeries in Sim */
-			Sim.bas_infected++;
+			ctx.bas_infected++;
 
 			/* Create "switch" and "secrete" event */
-			Sim.events.add(new Event(this, rate_switch, EVENT_TYPE.SWITCHPHASE));
-			Sim.events.add(new Event(this, rate_secrete, EVENT_TYPE.SECRETE));
+			ctx.org_scheduler.add(this, ctx.bio.rate_switch, EVENT_TYPE.SWITCHPHASE);
+			ctx.org_scheduler.add(this, ctx.bio.rate_secrete, EVENT_TYPE.SECRETE);
 
 			return true;
 			
@@ -210,13 +283,9 @@ public class Lambda_phage implements Organism {
 		/* check to see if virus has failed to infect */
 		else{ 
 		
-			/* Remove this virus from lambda vector and update counters */
-			for (int i = 0; i < Sim.lps.size(); i++) {
-				if (Sim.lps.elementAt(i).equals(this)) {
-					Sim.lps.remove(i);
-					Sim.lps_sum_sr -= this.prob_surface;
-					Sim.lps_sum_enz -= this.prob_enzymes;
-				}
+			/* Remove this virus from free phage population and update counters */
+			if (ctx.lps.remove(this)) {
+				ctx.lps_stats.remove(this.prob_surface, this.prob_enzymes);
 			}
 			return false; 
 		}
@@ -225,41 +294,82 @@ public class Lambda_phage implements Organism {
 
 	/**
 	 * SWITCHPHASE -Remove all events related to this virus -Remove this virus from
-	 * lambda vector -Remove all events related to this bacterium -Remove this
+	 * prophage population -Remove all events related to this bacterium -Remove this
 	 * bacterium from bacteria vector -Create new virus particles
 	 *
 	 */
 	public void switchPhase() {
 
 		/* Remove all events related to this virus */
-		for (int i = 0; i < Sim.events.size(); i++)
-			if (Sim.events.elementAt(i).org.equals(this))
-				Sim.events.elementAt(i).delete = true;
-
-		/* Remove this virus from lambda vector */
-		for (int i = 0; i < Sim.lps.size(); i++)
-			if (Sim.lps.elementAt(i).equals(this)) {
-				Sim.lps.remove(i);
-				Sim.lps_sum_sr += this.prob_surface;
-				Sim.lps_sum_enz += this.prob_enzymes;
-			}
+		ctx.org_scheduler.cancel(this);
+
+		/* Remove this virus from prophage population */
+		if (ctx.pro.remove(this)) {
+			ctx.lps_stats.remove(this.prob_surface, this.prob_enzymes);
+		}
 
 		/* kill infected bacteria */
 		this.current_ba.death(); 
 
 		/* Create new virus progeny */
-		for (int i = 0; i < progeny; i++)
-			Sim.lps.add(new Lambda_phage(prob_surface, prob_enzymes));
+		burst(ctx, prob_surface, prob_enzymes, ctx.bio.progeny);
+
+	}
+
+	/**
+	 * Releases n free virus progeny in one pass: the number of mutants is
+	 * drawn as one binomial variate and only the mutants are perturbed,
+	 * the running statistics take the unmutated progeny in one update, and
+	 * the population and scheduler each take the whole burst as a batch.
+	 * Progeny are distributed as if built one by one with the mutating
+	 * constructor. While a hybrid scheduler holds free phage as a density
+	 * the progeny go straight into it instead.
+	 * @param ctx - simulation the progeny live in
+	 * @param prob_surface - parent's surface receptor probability
+	 * @param prob_enzymes - parent's enzyme probability
+	 * @param n - number of progeny
+	 */
+	static void burst(SimulationContext ctx, double prob_surface, double prob_enzymes, int n) {
+		if (ctx.hybrid != null && ctx.hybrid.continuous()) {
+			ctx.hybrid.addProgeny(prob_surface, prob_enzymes, n);
+			return;
+		}
+		int mutants = Distributions.binomial(ctx.randy, n, ctx.bio.mutate_prob);
+		if (ctx.born.length < n) ctx.born = new Lambda_phage[n];
+		Lambda_phage[] born = ctx.born;
+		double[] traits = new double[2];
+
+		/* mutants first, each with its own perturbation */
+		for (int i = 0; i < mutants; i++) {
+			traits[0] = prob_surface;
+			traits[1] = prob_enzymes;
+			perturb(ctx.bio, ctx.randy, traits);
+			born[i] = new Lambda_phage(ctx, ctx.next_id++, traits[0], traits[1]);
+			ctx.lps_stats.add(traits[0], traits[1]);
+		}
+		for (int i = mutants; i < n; i++) {
+			born[i] = new Lambda_phage(ctx, ctx.next_id++, prob_surface, prob_enzymes);
+		}
+		ctx.lps_stats.add(prob_surface, prob_enzymes, n - mutants);
 
+		/* register events and population in one batch each */
+		ctx.org_scheduler.addAll(born, n, ctx.free_rates, free_types);
+		ctx.lps.addAll(born, n);
+		Arrays.fill(born, 0, n, null);
 	}
 
 	/**
 	 * SECRETE - Lysogenic secretion of a new virus particle. -Instantiate a new
-	 * virus.
+	 * virus, or add it to the density of a hybrid scheduler holding one.
 	 */
 	public void secrete() {
+		if (ctx.hybrid != null && ctx.hybrid.continuous()) {
+			ctx.hybrid.addProgeny(prob_surface, prob_enzymes, 1);
+			return;
+		}
+
 		/* Instantiate a new virus particle */
-		Sim.lps.add(new Lambda_phage(prob_surface, prob_enzymes));
+		ctx.lps.add(new Lambda_phage(ctx, prob_surface, prob_enzymes));
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,118 @@
+package virus_Bacteria_Simulation;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Hands a downsampled copy of some recorder columns to another thread
+ * (a live Graph on the event dispatch thread) through a bounded queue.
+ *
+ * One sample in stride is forwarded, and the stride doubles after every
+ * points forwarded samples, so a run of n samples forwards about
+ * points * log2(n / points) of them in all. Forwarded samples collect in a
+ * pending block that is offered to the queue at the end of each write; if
+ * the queue is full the block stays pending and every other sample of it
+ * is dropped whenever it fills up. The recording thread therefore never
+ * waits for the reader, which only costs it detail.
+ * @author Parker, Huttner
+ *
+ */
+public class LiveSink implements TrajectorySink {
+
+	/* Class Variables */
+	static final int QUEUE = 16; // blocks waiting for the reader
+
+	/* Instance Variables */
+	private int[] columns; // recorder columns forwarded, time first
+	private int points; // samples forwarded before the stride doubles
+	private int stride = 1; // forward one sample in stride
+	private int skip; // samples to pass over before the next forwarded one
+	private int forwarded; // samples forwarded at the current stride
+	private double[][] pending; // forwarded samples not yet queued, one array per column
+	private int rows; // samples in pending
+	private BlockingQueue<double[][]> queue = new ArrayBlockingQueue<double[][]>(QUEUE);
+	private volatile boolean closed;
+
+	/**
+	 * @param columns - Recorder columns to forward; Recorder.T is added first
+	 * @param points - samples forwarded before the stride doubles, also the
+	 * size of the pending block
+	 */
+	public LiveSink(int[] columns, int points) {
+		this.columns = new int[columns.length + 1];
+		this.columns[0] = Recorder.T;
+		System.arraycopy(columns, 0, this.columns, 1, columns.length);
+		this.points = points;
+		this.pending = new double[this.columns.length][points];
+	}
+
+	public void write(double[][] block, int n) {
+		int r = skip;
+		for (; r < n; r += stride) {
+			if (rows == pending[0].length) thin();
+			for (int c = 0; c < columns.length; c++) pending[c][rows] = block[columns[c]][r];
+			rows++;
+			if (++forwarded == points) {
+				forwarded = 0;
+				stride *= 2;
+			}
+		}
+		skip = r - n;
+		offer();
+	}
+
+	/**
+	 * Queues what is still pending, waiting for room if needed
+	 */
+	public void close() {
+		try {
+			if (rows > 0) queue.put(copy());
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		rows = 0;
+		closed = true;
+	}
+
+	/**
+	 * Called by the reader
+	 * @return next block of samples, {time, columns...} each of equal
+	 * length, or null if none is waiting
+	 */
+	public double[][] poll() {
+		return queue.poll();
+	}
+
+	/**
+	 * @return true once the run is over and every block has been polled
+	 */
+	public boolean done() {
+		return closed && queue.isEmpty();
+	}
+
+	/**
+	 * Queues the pending block unless the queue is full
+	 */
+	private void offer() {
+		if (rows > 0 && queue.offer(copy())) rows = 0;
+	}
+
+	private double[][] copy() {
+		double[][] block = new double[columns.length][rows];
+		for (int c = 0; c < columns.length; c++) System.arraycopy(pending[c], 0, block[c], 0, rows);
+		return block;
+	}
+
+	/**
+	 * Drops every other pending sample to make room
+	 */
+	private void thin() {
+		int kept = 0;
+		for (int r = 0; r < rows; r += 2, kept++) {
+			for (int c = 0; c < columns.length; c++) pending[c][kept] = pending[c][r];
+		}
+		rows = kept;
+	}
+
+}
@@ -0,0 +1,103 @@
+package virus_Bacteria_Simulation;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Running count, mean and variance of samples in a row of independent
+ * cells, updated one sample at a time with Welford's method and merged
+ * with Chan's formula, so accumulators of separate threads or processes
+ * combine exactly as if they had seen all samples. NaN samples are left
+ * out of their cell.
+ * @author Parker, Huttner
+ *
+ */
+public class Moments {
+
+	/* Instance Variables */
+	private long[] count; // samples in each cell
+	private double[] mean;
+	private double[] m2; // sum of squared deviations from the mean
+
+	/**
+	 * @param cells - number of cells
+	 */
+	public Moments(int cells) {
+		count = new long[cells];
+		mean = new double[cells];
+		m2 = new double[cells];
+	}
+
+	/**
+	 * Adds a sample to a cell
+	 * @param cell - cell index
+	 * @param x - sample, ignored if NaN
+	 * @return whether the sample was added
+	 */
+	public boolean add(int cell, double x) {
+		if (Double.isNaN(x)) return false;
+		long n = ++count[cell];
+		double delta = x - mean[cell];
+		mean[cell] += delta / n;
+		m2[cell] += delta * (x - mean[cell]);
+		return true;
+	}
+
+	/**
+	 * Adds the samples of every cell of other to the same cell here
+	 * @param other - moments with as many cells, left unchanged
+	 */
+	public void merge(Moments other) {
+		if (other.count.length != count.length) throw new IllegalArgumentException("moments have different cells");
+		for (int cell = 0; cell < count.length; cell++) {
+			long nb = other.count[cell];
+			if (nb == 0) continue;
+			long na = count[cell], n = na + nb;
+			double delta = other.mean[cell] - mean[cell];
+			mean[cell] += delta * nb / n;
+			m2[cell] += other.m2[cell] + delta * delta * na / n * nb;
+			count[cell] = n;
+		}
+	}
+
+	/**
+	 * @return samples in the cell
+	 */
+	public long count(int cell) {
+		return count[cell];
+	}
+
+	/**
+	 * @return mean of the cell, NaN without samples
+	 */
+	public double mean(int cell) {
+		return count[cell] > 0 ? mean[cell] : Double.NaN;
+	}
+
+	/**
+	 * @return sample variance of the cell, NaN for fewer than two samples
+	 */
+	public double variance(int cell) {
+		return count[cell] > 1 ? m2[cell] / (count[cell] - 1) : Double.NaN;
+	}
+
+	/**
+	 * Writes a cell's count, mean and m2
+	 */
+	void write(int cell, DataOutput out) throws IOException {
+		out.writeLong(count[cell]);
+		out.writeDouble(mean[cell]);
+		out.writeDouble(m2[cell]);
+	}
+
+	/**
+	 * Replaces a cell with one written by write
+	 */
+	void read(int cell, DataInput in) throws IOException {
+		count[cell] = in.readLong();
+		mean[cell] = in.readDouble();
+		m2[cell] = in.readDouble();
+	}
+
+}
@@ -0,0 +1,221 @@
+package virus_Bacteria_Simulation;
+
+import virus_Bacteria_Simulation.Organism.EVENT_TYPE;
+
+/**
+ * Next reaction method scheduler (Gibson & Bruck). Each event carries an
+ * absolute firing time and events are kept in an indexed binary heap ordered
+ * by that time, so insert, remove and reschedule are O(log n).
+ *
+ * Rates never change once an event is created, so only the event that fired
+ * needs a new time drawn; every other pending time stays valid. For the same
+ * reason the pending times may all be drawn afresh at any moment without
+ * changing the process (see redraw).
+ * @author Parker, Huttner
+ *
+ */
+public class NextReactionScheduler implements OrganismScheduler {
+
+	/* Instance Variables */
+	private SimulationContext ctx;
+	private Event[] heap = new Event[64]; // heap[0] fires first
+	private int size; // number of events in the heap
+
+	/**
+	 * @param ctx - simulation whose events are scheduled
+	 */
+	public NextReactionScheduler(SimulationContext ctx) {
+		this.ctx = ctx;
+	}
+
+	/**
+	 * Draws an absolute firing time and inserts the new event into the heap
+	 */
+	public void add(Organism org, double lambda, EVENT_TYPE type) {
+		Event evt = new Event(org, lambda, type);
+		evt.time = ctx.t + draw(lambda);
+		evt.attach();
+		insert(evt);
+	}
+
+	/**
+	 * Grows the heap once for the whole batch. A batch at least as large as
+	 * the heap is appended and the heap rebuilt bottom up in O(size); a
+	 * smaller one is sifted up event by event.
+	 */
+	public void addAll(Organism[] orgs, int n, double[] lambdas, EVENT_TYPE[] types) {
+		int added = n * types.length;
+		if (size + added > heap.length) {
+			Event[] bigger = new Event[Math.max(heap.length * 2, size + added)];
+			System.arraycopy(heap, 0, bigger, 0, size);
+			heap = bigger;
+		}
+		boolean rebuild = added >= size;
+		for (int i = 0; i < n; i++) {
+			for (int k = 0; k < types.length; k++) {
+				Event evt = new Event(orgs[i], lambdas[k], types[k]);
+				evt.time = ctx.t + draw(lambdas[k]);
+				evt.attach();
+				heap[size] = evt;
+				evt.index = size;
+				size++;
+				if (!rebuild) siftUp(evt.index);
+			}
+		}
+		if (rebuild) {
+			for (int i = size / 2 - 1; i >= 0; i--) siftDown(i);
+		}
+	}
+
+	/**
+	 * Removes the organism's events from the heap through its handles
+	 */
+	public void cancel(Organism org) {
+		Event[] handles = org.getEvents();
+		for (int i = 0; i < handles.length; i++) {
+			if (handles[i] != null) {
+				handles[i].delete = true;
+				remove(handles[i]);
+				handles[i] = null;
+			}
+		}
+	}
+
+	/**
+	 * @return event at the top of the heap
+	 */
+	public Event next() {
+		if (size == 0) return null;
+		return heap[0];
+	}
+
+	/**
+	 * Draws a new firing time for an event that is still valid
+	 */
+	public void fired(Event evt) {
+		if (evt.index >= 0 && !evt.delete) reschedule(evt, ctx.t + draw(evt.lambda));
+	}
+
+	/**
+	 * @return number of events in the heap
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Draws a new firing time from now for every pending event and rebuilds
+	 * the heap. Waiting times are exponential, so the new times have the
+	 * same distribution as the old ones given the current state; after the
+	 * random streams are replaced (SimulationContext.reseed) they make the
+	 * run independent of the one the pending times were drawn in.
+	 */
+	public void redraw() {
+		for (int i = 0; i < size; i++) heap[i].time = ctx.t + draw(heap[i].lambda);
+		for (int i = size / 2 - 1; i >= 0; i--) siftDown(i);
+	}
+
+	/**
+	 * Writes the heap in array order, so it is restored with the same layout
+	 */
+	public void save(Snapshot out) {
+		out.putInt(size);
+		for (int i = 0; i < size; i++) out.putEvent(heap[i]);
+	}
+
+	public void restore(Snapshot in) {
+		size = in.getInt();
+		heap = new Event[Math.max(64, Integer.highestOneBit(Math.max(size, 1)) << 1)];
+		for (int i = 0; i < size; i++) {
+			heap[i] = in.getEvent(ctx);
+			heap[i].index = i;
+		}
+	}
+
+	/**
+	 * Adds an event with a set firing time to the heap
+	 * @param evt - event to insert
+	 */
+	public void insert(Event evt) {
+		if (size == heap.length) {
+			Event[] bigger = new Event[heap.length * 2];
+			System.arraycopy(heap, 0, bigger, 0, size);
+			heap = bigger;
+		}
+		heap[size] = evt;
+		evt.index = size;
+		size++;
+		siftUp(evt.index);
+	}
+
+	/**
+	 * Removes an event from the heap
+	 * @param evt - event to remove
+	 */
+	public void remove(Event evt) {
+		int i = evt.index;
+		if (i < 0) return;
+
+		size--;
+		Event last = heap[size];
+		heap[size] = null;
+		evt.index = -1;
+
+		/* Move the last event into the hole and restore heap order */
+		if (i != size) {
+			heap[i] = last;
+			last.index = i;
+			siftDown(i);
+			siftUp(last.index);
+		}
+	}
+
+	/**
+	 * Moves an event to a new absolute firing time
+	 * @param evt - event in the heap
+	 * @param time - new firing time
+	 */
+	public void reschedule(Event evt, double time) {
+		double old = evt.time;
+		evt.time = time;
+		if (time < old) siftUp(evt.index);
+		else siftDown(evt.index);
+	}
+
+	/**
+	 * @param lambda - exponential distribution lambda variable
+	 * @return exponentially distributed waiting time
+	 */
+	private double draw(double lambda) {
+		return ctx.randy.nextExponential() / lambda;
+	}
+
+	private void siftUp(int i) {
+		Event evt = heap[i];
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (heap[parent].time <= evt.time) break;
+			heap[i] = heap[parent];
+			heap[i].index = i;
+			i = parent;
+		}
+		heap[i] = evt;
+		evt.index = i;
+	}
+
+	private void siftDown(int i) {
+		Event evt = heap[i];
+		int half = size >>> 1;
+		while (i < half) {
+			int child = 2 * i + 1;
+			if (child + 1 < size && heap[child + 1].time < heap[child].time) child++;
+			if (evt.time <= heap[child].time) break;
+			heap[i] = heap[child];
+			heap[i].index = i;
+			i = child;
+		}
+		heap[i] = evt;
+		evt.index = i;
+	}
+
+}
@@ -17,5 +17,20 @@ public interface Organism {
 	 */
 	public void execute(EVENT_TYPE type);
 	
+	/**
+	 * @return handles to this organism's live events, unused entries are null
+	 */
+	public Event[] getEvents();
+	
+	/**
+	 * @return position of this organism in its population, -1 if in none
+	 */
+	public int getSlot();
+	
+	/**
+	 * @param slot - new position of this organism in its population
+	 */
+	public void setSlot(int slot);
+	
 	
 }
@@ -0,0 +1,38 @@
+package virus_Bacteria_Simulation;
+
+import virus_Bacteria_Simulation.Organism.EVENT_TYPE;
+
+/**
+ * Scheduler whose events belong to organism objects. Organisms add their
+ * events as they are created or change state and cancel them when they
+ * leave their population.
+ * @author Parker, Huttner
+ *
+ */
+public interface OrganismScheduler extends Scheduler {
+
+	/**
+	 * Adds a new event for an organism to the pool
+	 * @param org - organism the event belongs to
+	 * @param lambda - event's exponential distribution lambda variable
+	 * @param type - type of event
+	 */
+	public void add(Organism org, double lambda, EVENT_TYPE type);
+
+	/**
+	 * Adds the same events for a batch of new organisms, in the order
+	 * add would be called: all events of the first organism, then the next
+	 * @param orgs - organisms the events belong to
+	 * @param n - number of organisms, from the start of orgs
+	 * @param lambdas - exponential distribution lambda variable of each event
+	 * @param types - type of each event
+	 */
+	public void addAll(Organism[] orgs, int n, double[] lambdas, EVENT_TYPE[] types);
+
+	/**
+	 * Invalidates every pending event belonging to an organism
+	 * @param org - organism whose events are removed
+	 */
+	public void cancel(Organism org);
+
+}
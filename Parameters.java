@@ -0,0 +1,54 @@
+package virus_Bacteria_Simulation;
+
+/**
+ * Parameters of one simulation run, as read from the parameter file
+ * @author Parker, Huttner
+ *
+ */
+public class Parameters implements Cloneable {
+
+	/* Instance Variables */
+	int lp_start = 100; //Starting number of lambda phage
+	int ba_start = 200; //Starting number of bateria
+	int step_max = 50000000; //Max value allowed for step_sum
+	String exportTo; //location to export data
+	String method; //scheduler name, next reaction method if null
+	double bin_width = 0; //Genotype bin width for binned free phage, 0 for exact genotypes
+	double record_interval = 0; //simulation time between recorded samples, 0 to record by events
+	int record_every = 1; //events between recorded samples when record_interval is 0
+	String trace; //event trace file, null for no trace
+	int check_every = 1000; //events between invariant checks, 0 for none
+	double check_probability = 0; //chance of an invariant check after each event, used instead of check_every if positive
+	String checkpoint; //snapshot file written while running, null for no checkpoints
+	double checkpoint_every = 600; //wall clock seconds between checkpoints
+	String render; //prefix of chart image files, null to show charts in windows
+	String render_format = "png"; //"png" or "svg"
+	int render_width = 800; //chart image width in pixels
+	int render_height = 600; //chart image height in pixels
+	String decimation = "minmax"; //"minmax" or "lttb", how series are reduced to the chart's columns
+	boolean live = false; //update the charts in windows while running
+	double time_max = 0; //simulation time to stop at, 0 for no limit (tau-leaping may pass it by one leap)
+	double wall_max = 0; //wall clock seconds to stop after, 0 for no limit
+	boolean stop_infected = false; //stop when every bacterium is infected
+	double steady_window = 0; //simulation time of a steady state window, 0 to not detect steady states
+	int steady_windows = 5; //windows whose averages must agree for a steady state
+	double steady_tolerance = 0.01; //largest spread of steady window averages, relative to their magnitude
+	boolean debug = Sim.DEBUG; //print every event
+	long seed = RandomStream.randomSeed(); //seed of the run, or of the replicate seeds of an ensemble
+	Biology bio = new Biology(); //rate constants and mutation model
+
+	/**
+	 * @return independent copy, with its own Biology
+	 */
+	public Parameters copy() {
+		try {
+			Parameters copy = (Parameters) super.clone();
+			copy.bio = bio.copy();
+			return copy;
+		}
+		catch (CloneNotSupportedException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+}
@@ -0,0 +1,260 @@
+package virus_Bacteria_Simulation;
+
+import java.util.Arrays;
+
+/**
+ * Free phage stored as counts per genotype. Counts are doubles so the same
+ * bins can hold phage densities; whole counts stay exact. Phage with identical
+ * (prob_surface, prob_enzymes) share a bin; with a bin width set, genotypes
+ * are first rounded to that grid so nearby genotypes share a bin too.
+ *
+ * Bins are found through an open addressing hash table on the genotype and
+ * counts are kept in a Fenwick tree, so adding phage, removing one phage and
+ * choosing a phage uniformly (a bin in proportion to its count) are
+ * O(log #bins). Empty bins are dropped by swapping in the last bin.
+ * @author Parker, Huttner
+ *
+ */
+public class PhageBins {
+
+	/* Instance Variables */
+	double[] surface = new double[64]; // genotype of each bin
+	double[] enzymes = new double[64];
+	double[] counts = new double[64]; // phage in each bin
+	int bins; // number of non-empty bins
+	double total; // number of phage in all bins
+	private double width; // genotype grid, 0 for exact bins
+	private double[] tree = new double[65]; // Fenwick tree over counts, 1-indexed
+	private int[] table = new int[128]; // bin + 1 at each hash position, 0 if empty
+
+	/**
+	 * @param width - genotype grid spacing, 0 to keep exact genotypes
+	 */
+	public PhageBins(double width) {
+		this.width = width;
+	}
+
+	/**
+	 * @param prob - resistance probability
+	 * @return probability rounded to the bin grid
+	 */
+	public double quantize(double prob) {
+		if (width <= 0) return prob;
+		return Math.round(prob / width) * width;
+	}
+
+	/**
+	 * Adds phage to the bin of a genotype, creating the bin if needed
+	 * @param sr - quantized surface probability
+	 * @param enz - quantized enzyme probability
+	 * @param n - number of phage to add
+	 */
+	public void add(double sr, double enz, double n) {
+		if (n <= 0) return;
+		int pos = position(sr, enz);
+		int bin;
+		if (table[pos] == 0) {
+			bin = newBin(sr, enz);
+			pos = position(sr, enz);
+			table[pos] = bin + 1;
+		} else {
+			bin = table[pos] - 1;
+		}
+		counts[bin] += n;
+		update(bin, n);
+		total += n;
+	}
+
+	/**
+	 * @param rank - phage number, 0 <= rank < total
+	 * @return bin holding that phage
+	 */
+	public int find(double rank) {
+		int bin = 0; // Fenwick position whose prefix count is <= rank
+		int step = Integer.highestOneBit(tree.length - 1);
+		for (; step > 0; step >>= 1) {
+			int next = bin + step;
+			if (next < tree.length && tree[next] <= rank) {
+				bin = next;
+				rank -= tree[next];
+			}
+		}
+		return Math.min(bin, bins - 1); // rank == total only through round-off
+	}
+
+	/**
+	 * Removes one phage from a bin, dropping the bin once it is empty
+	 * @param bin - non-empty bin
+	 */
+	public void remove(int bin) {
+		counts[bin]--;
+		update(bin, -1);
+		total--;
+		if (counts[bin] <= 0) deleteBin(bin);
+	}
+
+	/**
+	 * Removes a whole bin, moving the last bin into its index
+	 * @param bin - bin to remove
+	 */
+	public void drop(int bin) {
+		total -= counts[bin];
+		deleteBin(bin);
+	}
+
+	/**
+	 * Multiplies every count by the same factor
+	 * @param factor - scale factor
+	 */
+	public void scale(double factor) {
+		for (int bin = 0; bin < bins; bin++) counts[bin] *= factor;
+		total *= factor;
+		rebuildTree();
+	}
+
+	/**
+	 * Drops all bins
+	 */
+	public void clear() {
+		Arrays.fill(table, 0);
+		Arrays.fill(counts, 0, bins, 0);
+		Arrays.fill(tree, 0);
+		bins = 0;
+		total = 0;
+	}
+
+	/**
+	 * Writes the bins with their hash table and Fenwick tree as stored, so
+	 * a restored search walks the same partial sums
+	 */
+	void save(Snapshot out) {
+		out.putInt(surface.length);
+		out.putInt(bins);
+		out.putDoubles(surface, bins);
+		out.putDoubles(enzymes, bins);
+		out.putDoubles(counts, bins);
+		out.putDouble(total);
+		out.putDouble(width);
+		out.putDoubles(tree, tree.length);
+		out.putInts(table, table.length);
+	}
+
+	/**
+	 * Replaces the bins with ones written by save
+	 */
+	void restore(Snapshot in) {
+		int capacity = in.getInt();
+		bins = in.getInt();
+		surface = in.getDoubles(capacity);
+		enzymes = in.getDoubles(capacity);
+		counts = in.getDoubles(capacity);
+		total = in.getDouble();
+		width = in.getDouble();
+		tree = in.getDoubles(0);
+		table = in.getInts(0);
+	}
+
+	/**
+	 * @param sr - surface probability of the new bin
+	 * @param enz - enzyme probability of the new bin
+	 * @return index of a new, empty bin
+	 */
+	private int newBin(double sr, double enz) {
+		if (bins == surface.length) {
+			int capacity = 2 * bins;
+			surface = Arrays.copyOf(surface, capacity);
+			enzymes = Arrays.copyOf(enzymes, capacity);
+			counts = Arrays.copyOf(counts, capacity);
+			rebuildTree();
+		}
+		if (2 * (bins + 1) > table.length) rehash(2 * table.length);
+
+		surface[bins] = sr;
+		enzymes[bins] = enz;
+		counts[bins] = 0;
+		return bins++;
+	}
+
+	/**
+	 * Drops a bin by moving the last bin into its index
+	 * @param bin - bin whose count is already taken off total
+	 */
+	private void deleteBin(int bin) {
+		unlink(position(surface[bin], enzymes[bin]));
+
+		update(bin, -counts[bin]);
+		int last = --bins;
+		if (bin != last) {
+			table[position(surface[last], enzymes[last])] = bin + 1;
+			surface[bin] = surface[last];
+			enzymes[bin] = enzymes[last];
+			counts[bin] = counts[last];
+			update(bin, counts[last]);
+			update(last, -counts[last]);
+		}
+		counts[last] = 0;
+	}
+
+	/**
+	 * @return hash table position of the genotype, or the empty position where
+	 * it would be inserted
+	 */
+	private int position(double sr, double enz) {
+		int mask = table.length - 1;
+		int pos = hash(sr, enz) & mask;
+		while (table[pos] != 0) {
+			int bin = table[pos] - 1;
+			if (surface[bin] == sr && enzymes[bin] == enz) return pos;
+			pos = (pos + 1) & mask;
+		}
+		return pos;
+	}
+
+	/**
+	 * Clears a hash table position, shifting back later entries of the same
+	 * probe run so lookups never stop early
+	 * @param pos - occupied table position
+	 */
+	private void unlink(int pos) {
+		int mask = table.length - 1;
+		int hole = pos;
+		int next = pos;
+		while (true) {
+			next = (next + 1) & mask;
+			if (table[next] == 0) break;
+			int bin = table[next] - 1;
+			int home = hash(surface[bin], enzymes[bin]) & mask;
+			boolean movable = (next > hole) ? (home <= hole || home > next) : (home <= hole && home > next);
+			if (movable) {
+				table[hole] = table[next];
+				hole = next;
+			}
+		}
+		table[hole] = 0;
+	}
+
+	private void rehash(int capacity) {
+		table = new int[capacity];
+		for (int bin = 0; bin < bins; bin++) table[position(surface[bin], enzymes[bin])] = bin + 1;
+	}
+
+	private static int hash(double sr, double enz) {
+		long h = Double.doubleToLongBits(sr) * 0x9E3779B97F4A7C15L + Double.doubleToLongBits(enz);
+		h ^= h >>> 29;
+		h *= 0xBF58476D1CE4E5B9L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	/**
+	 * Adds to the Fenwick count of a bin
+	 */
+	private void update(int bin, double delta) {
+		for (int i = bin + 1; i < tree.length; i += i & -i) tree[i] += delta;
+	}
+
+	private void rebuildTree() {
+		tree = new double[counts.length + 1];
+		for (int bin = 0; bin < bins; bin++) update(bin, counts[bin]);
+	}
+
+}
@@ -0,0 +1,135 @@
+package virus_Bacteria_Simulation;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * Unsynchronized population container. Each organism stores its own slot in
+ * the population and removal swaps the last organism into the hole, so add,
+ * remove and random sampling are all O(1). Order is not preserved.
+ * @author Parker, Huttner
+ *
+ * @param <T> - organism type held by this population
+ */
+public class Population<T extends Organism> implements Iterable<T> {
+
+	/* Instance Variables */
+	private Organism[] members = new Organism[64];
+	private int size;
+	private EventTrace trace; // records additions and removals, null if not traced
+	private int code; // population code in the trace
+
+	/**
+	 * Records every later addition and removal in an event trace
+	 * @param trace - event trace
+	 * @param code - EventTrace.BACTERIA, FREE or PROPHAGE
+	 */
+	void setTrace(EventTrace trace, int code) {
+		this.trace = trace;
+		this.code = code;
+	}
+
+	/**
+	 * Adds an organism to the end of the population
+	 * @param org - organism not in any population
+	 */
+	public void add(T org) {
+		if (size == members.length) {
+			Organism[] bigger = new Organism[members.length * 2];
+			System.arraycopy(members, 0, bigger, 0, size);
+			members = bigger;
+		}
+		members[size] = org;
+		org.setSlot(size);
+		size++;
+		if (trace != null) trace.added(code, org);
+	}
+
+	/**
+	 * Adds a batch of organisms to the end of the population, growing it once
+	 * @param orgs - organisms not in any population
+	 * @param n - number of organisms, from the start of orgs
+	 */
+	public void addAll(T[] orgs, int n) {
+		if (size + n > members.length) {
+			Organism[] bigger = new Organism[Math.max(members.length * 2, size + n)];
+			System.arraycopy(members, 0, bigger, 0, size);
+			members = bigger;
+		}
+		for (int i = 0; i < n; i++) {
+			members[size] = orgs[i];
+			orgs[i].setSlot(size);
+			size++;
+			if (trace != null) trace.added(code, orgs[i]);
+		}
+	}
+
+	/**
+	 * Removes an organism by moving the last organism into its slot
+	 * @param org - organism to remove
+	 * @return true if the organism was in this population
+	 */
+	public boolean remove(T org) {
+		int slot = org.getSlot();
+		if (slot < 0 || slot >= size || members[slot] != org) return false;
+
+		size--;
+		Organism last = members[size];
+		members[slot] = last;
+		last.setSlot(slot);
+		members[size] = null;
+		org.setSlot(-1);
+		if (trace != null) trace.removed(code, org);
+		return true;
+	}
+
+	/**
+	 * @param index - slot in the population
+	 * @return organism in that slot
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(int index) {
+		if (index >= size) throw new IndexOutOfBoundsException(index + " >= " + size);
+		return (T) members[index];
+	}
+
+	/**
+	 * @param rand - random number generator
+	 * @return uniformly chosen organism
+	 */
+	public T sample(Random rand) {
+		return get(rand.nextInt(size));
+	}
+
+	/**
+	 * @return number of organisms in the population
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Iterates the population in slot order. The population must not be
+	 * modified while iterating.
+	 */
+	public Iterator<T> iterator() {
+		return new Iterator<T>() {
+			private int next = 0;
+
+			public boolean hasNext() {
+				return next < size;
+			}
+
+			public T next() {
+				if (next >= size) throw new NoSuchElementException();
+				return get(next++);
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+}
@@ -0,0 +1,159 @@
+package virus_Bacteria_Simulation;
+
+import java.util.Random;
+
+/**
+ * Seeded, splittable random number stream (the SplitMix64 generator of
+ * Steele, Lea and Flood, as in java.util.SplittableRandom). Extends Random
+ * so it can be passed anywhere a Random is expected, but keeps its own
+ * unsynchronized 64 bit state instead of Random's atomically updated seed.
+ *
+ * A stream is a pure function of its seed: the same seed always produces
+ * the same sequence of draws on any JVM and any thread. split() derives an
+ * independent child stream deterministically from the parent's state.
+ * A stream must only be used by one thread at a time.
+ * @author Parker, Huttner
+ *
+ */
+public class RandomStream extends Random {
+
+	/* Class Variables */
+	private static final long serialVersionUID = 1L;
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+	private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+	/* Instance Variables */
+	private long state; // advanced by gamma on every draw
+	private final long gamma; // odd increment of this stream
+
+	/**
+	 * @param seed - seed of the stream
+	 */
+	public RandomStream(long seed) {
+		this(seed, GOLDEN_GAMMA);
+	}
+
+	private RandomStream(long state, long gamma) {
+		super(0);
+		this.state = state;
+		this.gamma = gamma;
+	}
+
+	/**
+	 * @return a seed that differs between calls, for runs without a given seed
+	 */
+	public static long randomSeed() {
+		return mix64(System.nanoTime()) ^ mix64(System.currentTimeMillis() + GOLDEN_GAMMA);
+	}
+
+	/**
+	 * @return new stream, statistically independent of this one
+	 */
+	public RandomStream split() {
+		return new RandomStream(nextLong(), mixGamma(nextState()));
+	}
+
+	public long nextLong() {
+		return mix64(nextState());
+	}
+
+	public int nextInt() {
+		return (int) (mix64(nextState()) >>> 32);
+	}
+
+	/**
+	 * @return uniform double in [0, 1)
+	 */
+	public double nextDouble() {
+		return (nextLong() >>> 11) * DOUBLE_UNIT;
+	}
+
+	/**
+	 * Unbiased bounded int by rejection, as in SplittableRandom
+	 * @param bound - positive upper bound
+	 * @return uniform int in [0, bound)
+	 */
+	public int nextInt(int bound) {
+		if (bound <= 0) throw new IllegalArgumentException("bound must be positive");
+		int r = nextInt();
+		int m = bound - 1;
+		if ((bound & m) == 0) return r & m;
+		for (int u = r >>> 1; u + m - (r = u % bound) < 0; u = nextInt() >>> 1);
+		return r;
+	}
+
+	/**
+	 * @return exponentially distributed draw with rate 1
+	 */
+	public double nextExponential() {
+		return -Math.log(1 - nextDouble()); // 1 - u is never 0
+	}
+
+	/**
+	 * Fills out[0..n) with uniform doubles in [0, 1), the same values n calls
+	 * to nextDouble would return
+	 * @param out - array to fill
+	 * @param n - number of draws
+	 */
+	public void fillUniform(double[] out, int n) {
+		long s = state;
+		for (int i = 0; i < n; i++) {
+			s += gamma;
+			out[i] = (mix64(s) >>> 11) * DOUBLE_UNIT;
+		}
+		state = s;
+	}
+
+	/**
+	 * Fills out[0..n) with exponential draws of rate 1, the same values n
+	 * calls to nextExponential would return
+	 * @param out - array to fill
+	 * @param n - number of draws
+	 */
+	public void fillExponential(double[] out, int n) {
+		fillUniform(out, n);
+		for (int i = 0; i < n; i++) out[i] = -Math.log(1 - out[i]);
+	}
+
+	/**
+	 * Writes the state of the stream to a snapshot
+	 */
+	void save(Snapshot out) {
+		out.putLong(state);
+		out.putLong(gamma);
+	}
+
+	/**
+	 * @return stream continuing exactly where the saved stream stopped
+	 */
+	static RandomStream restore(Snapshot in) {
+		long state = in.getLong();
+		return new RandomStream(state, in.getLong());
+	}
+
+	protected int next(int bits) {
+		return (int) (mix64(nextState()) >>> (64 - bits));
+	}
+
+	private long nextState() {
+		return state += gamma;
+	}
+
+	private static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * @return odd gamma with enough bit transitions for a good stream
+	 */
+	private static long mixGamma(long z) {
+		z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+		z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		z = (z ^ (z >>> 33)) | 1L;
+		int n = Long.bitCount(z ^ (z >>> 1));
+		return (n < 24) ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+	}
+
+}
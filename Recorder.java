@@ -0,0 +1,187 @@
+package virus_Bacteria_Simulation;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Samples the state of a simulation into fixed size primitive buffers and
+ * hands full buffers to its sinks, so memory use does not grow with the
+ * length of a run.
+ *
+ * Samples are taken either on a simulation time grid (every interval time
+ * units, with the state that holds at each grid time) or every N events
+ * (with the state before the event, as the original per-event graphs did).
+ * With tau-leaping a grid time covered by a leap gets the state after that
+ * leap. Means and variances come from the simulation's TraitStatistics, so
+ * a sample is O(1); phage variances leave out a hybrid density. A recorder
+ * without sinks records nothing. Sinks that show a run while it goes on
+ * can ask for a latency, after which a partly filled buffer is flushed.
+ * @author Parker, Huttner
+ *
+ */
+public class Recorder {
+
+	/* Class Variables */
+	static final String[] COLUMNS = {"t", "Lambda_Phage", "Bacteria", "bas_avg_sr", "bas_avg_enz",
+			"lps_avg_sr", "lps_avg_enz", "bas_infected", "bas_var_sr", "bas_var_enz", "lps_var_sr", "lps_var_enz"};
+	static final int CAPACITY = 4096; // default number of samples buffered
+	static final int CLOCK_EVERY = 64; // samples between reads of the clock when a latency is set
+	static final int T = 0, LPS = 1, BAS = 2, BAS_SR = 3, BAS_ENZ = 4, LPS_SR = 5, LPS_ENZ = 6, INFECTED = 7;
+	static final int BAS_VAR_SR = 8, BAS_VAR_ENZ = 9, LPS_VAR_SR = 10, LPS_VAR_ENZ = 11;
+
+	/* Instance Variables */
+	private SimulationContext ctx;
+	private double interval; // simulation time between samples, 0 to sample by events
+	private int every; // events between samples when not sampling on a time grid
+	private double[][] columns; // buffered samples, one array per column
+	private int rows; // number of buffered samples
+	private long grid; // number of grid times sampled so far
+	private long events; // events since the last sample
+	private long written; // samples handed to the sinks
+	private long latency; // nanoseconds a sample may stay buffered, 0 for no limit
+	private long flushed_at; // System.nanoTime() of the last flush
+	private int countdown = CLOCK_EVERY; // samples until the clock is read
+	private List<TrajectorySink> sinks = new ArrayList<TrajectorySink>();
+
+	/**
+	 * @param ctx - simulation to sample
+	 * @param interval - simulation time between samples, 0 to sample every N events
+	 * @param every - events between samples, used when interval is 0
+	 * @param capacity - samples buffered before the sinks are written
+	 */
+	public Recorder(SimulationContext ctx, double interval, int every, int capacity) {
+		this.ctx = ctx;
+		this.interval = interval;
+		this.every = Math.max(every, 1);
+		this.columns = new double[COLUMNS.length][capacity];
+	}
+
+	/**
+	 * @param sink - consumer of the recorded samples
+	 */
+	public void addSink(TrajectorySink sink) {
+		sinks.add(sink);
+	}
+
+	/**
+	 * Flushes a partly filled buffer once its oldest samples are about
+	 * seconds old; the age is checked every CLOCK_EVERY samples
+	 * @param seconds - wall clock time, 0 to flush only full buffers
+	 */
+	public void setLatency(double seconds) {
+		latency = (long) (Math.max(seconds, 0) * 1e9);
+		flushed_at = System.nanoTime();
+	}
+
+	/**
+	 * Called before the state changes at a new time
+	 * @param time - time the change happens at
+	 * @param fired - number of events the change stands for
+	 */
+	public void advance(double time, long fired) {
+		if (sinks.isEmpty()) return;
+		if (interval > 0) {
+			while (grid * interval < time) {
+				sample(grid * interval);
+				grid++;
+			}
+		}
+		else {
+			events += fired;
+			if (events >= every) {
+				sample(ctx.t);
+				events %= every;
+			}
+		}
+	}
+
+	/**
+	 * Writes the buffered samples to every sink
+	 */
+	public void flush() {
+		if (rows == 0) return;
+		try {
+			for (TrajectorySink sink : sinks) sink.write(columns, rows);
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		written += rows;
+		rows = 0;
+		if (latency > 0) flushed_at = System.nanoTime();
+	}
+
+	/**
+	 * @return samples handed to the sinks so far
+	 */
+	public long written() {
+		return written;
+	}
+
+	/**
+	 * Flushes the buffered samples and closes every sink
+	 */
+	public void close() {
+		flush();
+		try {
+			for (TrajectorySink sink : sinks) sink.close();
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Writes the sampling position to a snapshot. Buffered samples must be
+	 * flushed first, they are not part of the snapshot.
+	 */
+	void save(Snapshot out) {
+		if (rows > 0) throw new IllegalStateException("recorder must be flushed before a snapshot");
+		out.putLong(grid);
+		out.putLong(events);
+		out.putLong(written);
+	}
+
+	/**
+	 * Continues sampling from a position written by save
+	 */
+	void restore(Snapshot in) {
+		grid = in.getLong();
+		events = in.getLong();
+		written = in.getLong();
+	}
+
+	/**
+	 * Buffers the current state as a sample at the given time
+	 */
+	private void sample(double time) {
+		double lps = ctx.lps_size(), bas = ctx.bas_size();
+		TraitStatistics bas_stats = ctx.bas_stats, lps_stats = ctx.lps_stats;
+		double lps_sr = lps_stats.sum(TraitStatistics.SURFACE), lps_enz = lps_stats.sum(TraitStatistics.ENZYMES);
+		if (ctx.hybrid != null) {
+			lps_sr += ctx.hybrid.sumSurface();
+			lps_enz += ctx.hybrid.sumEnzymes();
+		}
+
+		columns[T][rows] = time;
+		columns[LPS][rows] = lps;
+		columns[BAS][rows] = bas;
+		columns[BAS_SR][rows] = bas_stats.sum(TraitStatistics.SURFACE) / bas;
+		columns[BAS_ENZ][rows] = bas_stats.sum(TraitStatistics.ENZYMES) / bas;
+		columns[LPS_SR][rows] = lps_sr / lps;
+		columns[LPS_ENZ][rows] = lps_enz / lps;
+		columns[INFECTED][rows] = (ctx.bas_infected / bas) * 100d;
+		columns[BAS_VAR_SR][rows] = bas_stats.variance(TraitStatistics.SURFACE);
+		columns[BAS_VAR_ENZ][rows] = bas_stats.variance(TraitStatistics.ENZYMES);
+		columns[LPS_VAR_SR][rows] = lps_stats.variance(TraitStatistics.SURFACE);
+		columns[LPS_VAR_ENZ][rows] = lps_stats.variance(TraitStatistics.ENZYMES);
+		if (++rows == columns[T].length) flush();
+		else if (latency > 0 && --countdown == 0) {
+			countdown = CLOCK_EVERY;
+			if (System.nanoTime() - flushed_at >= latency) flush();
+		}
+	}
+
+}
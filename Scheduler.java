@@ -0,0 +1,46 @@
+package virus_Bacteria_Simulation;
+
+/**
+ * General interface for choosing the next event to fire.
+ * Implementations own the pool of pending events for the simulation.
+ * Schedulers whose events belong to organism objects take them from the
+ * organisms through OrganismScheduler; the compact backend has none and
+ * keeps its events implicitly.
+ * @author Parker, Huttner
+ *
+ */
+public interface Scheduler {
+
+	/**
+	 * Finds the event that happens first. The returned event's time holds
+	 * the absolute simulation time at which it fires.
+	 * @return next event, or null if no valid events remain
+	 */
+	public Event next();
+
+	/**
+	 * Called after an event returned by next() has been executed
+	 * @param evt - event that just fired
+	 */
+	public void fired(Event evt);
+
+	/**
+	 * @return number of valid events in the pool
+	 */
+	public int size();
+
+	/**
+	 * Writes the pending events to a snapshot. Events refer to their
+	 * organisms by population and slot.
+	 * @param out - snapshot being written
+	 */
+	public void save(Snapshot out);
+
+	/**
+	 * Replaces the pending events with ones written by save. The populations
+	 * must already be restored.
+	 * @param in - snapshot being read
+	 */
+	public void restore(Snapshot in);
+
+}
@@ -0,0 +1,89 @@
+package virus_Bacteria_Simulation;
+
+import org.jfree.data.xy.XYSeries;
+
+/**
+ * Collects recorded samples into JFreeChart series for graphing, in
+ * memory bounded however long the run. Samples are kept in primitive
+ * arrays of at most points rows: one sample in stride is kept, and when
+ * the arrays fill up every other kept sample is dropped and the stride
+ * doubles, so the kept samples always cover the whole run evenly. The
+ * series are built from them on close; they are unsorted and accept
+ * duplicate times.
+ * @author Parker, Huttner
+ *
+ */
+public class SeriesSink implements TrajectorySink {
+
+	/* Class Variables */
+	static final int POINTS = 1 << 16; // default samples kept at most
+
+	/* Graphing Variables, built on close */
+	XYSeries lps_pop;
+	XYSeries bas_pop;
+	XYSeries bas_avg_sr_data;
+	XYSeries bas_avg_enz_data;
+	XYSeries lps_avg_sr_data;
+	XYSeries lps_avg_enz_data;
+	XYSeries bas_infected_data;
+
+	/* Instance Variables */
+	private double[][] kept; // kept samples, indexed by Recorder column T to INFECTED
+	private int rows; // samples kept
+	private int stride = 1; // keep one sample in stride
+	private int skip; // samples to pass over before the next kept one
+
+	/**
+	 * Creates a sink keeping at most POINTS samples
+	 */
+	public SeriesSink() {
+		this(POINTS);
+	}
+
+	/**
+	 * @param points - samples kept at most, even
+	 */
+	public SeriesSink(int points) {
+		kept = new double[Recorder.INFECTED + 1][Math.max(points & ~1, 2)];
+	}
+
+	public void write(double[][] columns, int n) {
+		int r = skip;
+		for (; r < n; r += stride) {
+			if (rows == kept[0].length) thin();
+			for (int c = 0; c < kept.length; c++) kept[c][rows] = columns[c][r];
+			rows++;
+		}
+		skip = r - n;
+	}
+
+	public void close() {
+		lps_pop = series(Recorder.LPS);
+		bas_pop = series(Recorder.BAS);
+		bas_avg_sr_data = series(Recorder.BAS_SR);
+		bas_avg_enz_data = series(Recorder.BAS_ENZ);
+		lps_avg_sr_data = series(Recorder.LPS_SR);
+		lps_avg_enz_data = series(Recorder.LPS_ENZ);
+		bas_infected_data = series(Recorder.INFECTED);
+	}
+
+	/**
+	 * Drops every other kept sample and doubles the stride; the next sample
+	 * kept is then the one the old stride was at, so spacing stays even
+	 */
+	private void thin() {
+		int half = 0;
+		for (int r = 0; r < rows; r += 2, half++) {
+			for (int c = 0; c < kept.length; c++) kept[c][half] = kept[c][r];
+		}
+		rows = half;
+		stride *= 2;
+	}
+
+	private XYSeries series(int column) {
+		XYSeries series = new XYSeries(Recorder.COLUMNS[column], false, true);
+		for (int r = 0; r < rows; r++) series.add(kept[Recorder.T][r], kept[column][r], false);
+		return series;
+	}
+
+}
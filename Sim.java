@@ -16,17 +16,12 @@ package virus_Bacteria_Simulation;
 
 /* Imports */
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.util.Iterator;
-import java.util.Vector;
-import java.util.Random;
+import java.awt.GraphicsEnvironment;
 
-import org.jfree.data.xy.XYDataItem;
 import org.jfree.data.xy.XYSeries;
 
 /**
@@ -39,142 +34,111 @@ public class Sim{
 	/* Final Variables (Edit for different simulations) */
 	static final int lp_max = 1000; //Max number of lambda phage
 	static final int ba_max = 100; //Max number of bacteria
-	static int lp_start = 100; //Starting nbumber of lambda phage
-	static int ba_start = 200; //Starting number of bateria
 	static final boolean DEBUG = true; //Boolean flag for debugging printouts
-	static int step_max = 50000000; //Max value allowed for step_sum
-	
-	/* Class Variables */
-	static double t; //Current time in simulation
-	static int i,j; //Loop Variables
-	static Random randy = new Random(); // Random variable
-	static Vector<Event> events = new Vector<Event>(); //List of events
-	static Vector<Lambda_phage> lps = new Vector<Lambda_phage>();
-	static Vector<Bacterium> bas = new Vector<Bacterium>();
-	static String exportTo;//location to export data
-	
-	/* Running Sums */
-	static double bas_sum_sr; //sum of resistance levels for bacteria surface receptors
-	static double bas_sum_enz;//sum of resistance levels for bacteria enzymes
-	static double lps_sum_sr; //sum of resistance levels for bacteria surface receptors
-	static double lps_sum_enz;//sum of resistance levels for bacteria enzymes
-	static int bas_infected = 0;//sum of bacteria infected;
-	static int step_sum = 0; //Total number of events so far
-	
-	/* Graphing Variables */
-	private static XYSeries lps_pop = new XYSeries("Lambda_Phage");
-	private static XYSeries bas_pop = new XYSeries("Bacteria");
-	private static XYSeries bas_avg_sr_data = new XYSeries("bas_avg_sr");
-	private static XYSeries bas_avg_enz_data = new XYSeries("bas_avg_enz");
-	private static XYSeries lps_avg_sr_data = new XYSeries("lps_avg_sr");
-	private static XYSeries lps_avg_enz_data = new XYSeries("lps_avg_enz");
-	private static XYSeries bas_infected_data = new XYSeries("bas_infected");
-	
-	
-	/* Debuging Variables */
-	private static double test_count = 0;
 	
 	/**
 	 * Main
-	 * @param args
+	 * @param args - none to read the parameters as described in getInfo,
+	 * 	or "resume" and a checkpoint file to continue a checkpointed run
 	 */
 	public static void main(String[] args) {
 		
-		/* get user input */
-		getInfo();
-		
-		/* Create starting number of bacteria and virus */
-		for(i=0; i<lp_start; i++) lps.add(new Lambda_phage());
-		for(i=0; i<ba_start; i++) bas.add(new Bacterium());
+		SimulationContext ctx;
+		boolean resumed = args.length >= 2 && args[0].equalsIgnoreCase("resume");
+		if(resumed){
+			/* continue a checkpointed run */
+			try {
+				ctx = SimulationContext.resume(new File(args[1]));
+			} catch (IOException e) {
+				e.printStackTrace();
+				System.exit(1);
+				return;
+			}
+			System.out.println("Resumed at t = " + ctx.t + " after " + ctx.step_sum + " steps, seed: " + ctx.seed);
+		}
+		else{
+			/* get user input */
+			Parameters params = getInfo();
+			System.out.println("Seed: " + params.seed);
+			ctx = new SimulationContext(params);
+		}
+		Parameters params = ctx.params;
 		
 		/* Run simulation */
-		while(true){
-			
-			/* Remove invalid events */
-			for(i=0; i<events.size(); i++) if(events.get(i).delete) events.remove(i);
-			
-			/* If system still valid */
-			if(events.size()!=0 && bas.size()!=0 && lps.size()!=0){
-				
-				/* Initialize Event Traversal */
-				double min_time = Double.MAX_VALUE; //The time until first event
-				Event first_event = new Event(); 
-				
-				/*  Traverse list of events */
-				for(i=0; i<events.size(); i++){
-					double time = -Math.log(randy.nextDouble())/events.get(i).lambda; //Calculate time for each valid event
-					if(time < min_time){ //Find the event that happens first
-						min_time = time;
-						first_event = events.get(i);
-					}
-				}
-				
-				/* Store number of steps that have occurred */
-				step_sum += events.size();
-				
-				/* Graph Relevant Variables */
-				addParameters();
-				
-				t += min_time; //Update the time
-				first_event.org.execute(first_event.type); //Call event!
-				
-				if(DEBUG) System.out.println(String.valueOf(t) + " " + first_event.type.toString() + " ");
-				
-				if(step_sum >= step_max ){break;}
-				
-				int count = 0;
-				for(Bacterium ba : bas){
-					if(ba.infected){
-						count++;
-					}
-				}
-				if(bas_infected != count){
-					System.err.println(first_event.type.toString());
-					System.out.println("bas_infected : count ==> " + bas_infected + " : " + count);
-					System.exit(1);
-				}
-			
-				
+		boolean charts = !"off".equalsIgnoreCase(params.render);
+		SeriesSink data = null;
+		if(charts){
+			data = new SeriesSink();
+			ctx.recorder.addSink(data);
+		}
+		if(params.exportTo != null && params.exportTo.length() > 0){
+			File file = new File(params.exportTo + "trajectory.bin");
+			try {
+				if(resumed) ctx.recorder.addSink(new TrajectoryWriter(file, ctx.recorder.written()));
+				else ctx.recorder.addSink(new TrajectoryWriter(file, ctx));
+			} catch (IOException e) {
+				e.printStackTrace();
 			}
-			else{
-				System.out.println("Critical population extinct");
-				System.exit(1);
+		}
+		if(params.trace != null && params.trace.length() > 0){
+			try {
+				ctx.setTrace(new EventTrace(new File(resumed ? params.trace + ".resumed" : params.trace)));
+			} catch (IOException e) {
+				e.printStackTrace();
 			}
-			
 		}
+		if(params.checkpoint != null && params.checkpoint.length() > 0){
+			ctx.setCheckpointer(new Checkpointer(ctx, new File(params.checkpoint), params.checkpoint_every));
+		}
+		Graph[] live = null;
+		if(charts && params.live && params.render == null && !GraphicsEnvironment.isHeadless()){
+			/* chart while running */
+			ctx.recorder.setLatency(Graph.REPAINT_MS / 1000d);
+			live = new Graph[]{
+				new Graph(ctx.recorder, new int[]{Recorder.LPS, Recorder.BAS}, "Population", "Time", "Populaiton Size"),
+				new Graph(ctx.recorder, new int[]{Recorder.BAS_SR, Recorder.BAS_ENZ, Recorder.LPS_SR, Recorder.LPS_ENZ},
+						"Average Resistance", "Time", "Resistance Probability"),
+				new Graph(ctx.recorder, new int[]{Recorder.INFECTED}, "Percent Bacteria Infected", "Time", "Percent Infected")};
+		}
+		ctx.run();
+		ctx.recorder.close();
+		if(ctx.checkpointer != null) ctx.checkpointer.close();
+		if(ctx.trace != null){
+			try {
+				ctx.trace.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		if(ctx.extinct) System.out.println("Critical population extinct");
+		System.out.println("Stopped at t = " + ctx.t + " after " + ctx.step_sum + " steps: " + ctx.stop_reason
+				+ " (reason code " + ctx.stop_reason.ordinal() + ")");
 		
-
+		if(!charts) return;
 		
+		/* without a display, charts go to files next to the trajectory */
+		if(params.render == null && GraphicsEnvironment.isHeadless()){
+			params.render = params.exportTo != null ? params.exportTo : "";
+		}
 		
 		/* graph populations */
-		XYSeries[] test = {lps_pop,bas_pop};
-		graph(test, "Population", "Time", "Populaiton Size"); // call graph method to plot visual representation of data
-	//	printData(test);
+		XYSeries[] test = {data.lps_pop,data.bas_pop};
+		XYSeries[] resistance = {data.bas_avg_sr_data, data.bas_avg_enz_data,data.lps_avg_sr_data, data.lps_avg_enz_data};
+		XYSeries[] infected = {data.bas_infected_data};
+		if(live != null){
+			/* the live charts get the complete series */
+			live[0].finish(test, params.decimation);
+			live[1].finish(resistance, params.decimation);
+			live[2].finish(infected, params.decimation);
+			return;
+		}
+		graph(test, "Population", "Time", "Populaiton Size", params); // call graph method to plot visual representation of data
 		
 		/* graph average resistance */
-		XYSeries[] resistance = {bas_avg_sr_data, bas_avg_enz_data,lps_avg_sr_data, lps_avg_enz_data};
-		graph(resistance, "Average Resistance", "Time", "Resistance Probability");
-	//	printData(resistance);
+		graph(resistance, "Average Resistance", "Time", "Resistance Probability", params);
 		
 		/* graph bas_infected_data */
-		XYSeries[] infected = {bas_infected_data};
-		graph(infected,"Percent Bacteria Infected", "Time", "Percent Infected");
-	//	printData(infected);
-		
-	}
-	
-	/**
-	 * Adds parameters to graph
-	 */
-	public static void addParameters(){
-		
-		lps_pop.add(new XYDataItem(t,lps.size()));
-		bas_pop.add(new XYDataItem(t,bas.size()));
-		bas_avg_sr_data.add(new XYDataItem(t,bas_sum_sr / bas.size()));
-		bas_avg_enz_data.add(new XYDataItem(t,bas_sum_enz / bas.size()));
-		bas_infected_data.add(new XYDataItem(t, (bas_infected / (double)bas.size()) * 100d));
-		lps_avg_sr_data.add(new XYDataItem(t,lps_sum_sr / lps.size()));
-		lps_avg_enz_data.add(new XYDataItem(t, lps_sum_enz / lps.size()));
+		graph(infected,"Percent Bacteria Infected", "Time", "Percent Infected", params);
 		
 	}
 	
@@ -183,10 +147,46 @@ public class Sim{
 	 * 	lp_start \n
 	 * 	ba_start \n
 	 * 	step_max \n
+	 * 	exportTo \n (prefix of the binary trajectory file, "trajectory.bin" is appended;
+	 * 		convert it to text with TrajectoryReader)
+	 * 	scheduler \n (optional: "direct" for the direct scan, "aggregate" for type-aggregated
+	 * 		propensities, "compact" for aggregated propensities over the compact
+	 * 		population backend, "binned" for the compact backend with free phage
+	 * 		counted per genotype, "tau" for tau-leaping over the binned backend,
+	 * 		"hybrid" for free phage as a continuous density once numerous,
+	 * 		next reaction method otherwise)
+	 * 	bin_width \n (optional: genotype bin width for "binned", "tau" and "hybrid",
+	 * 		exact genotypes if absent or 0)
+	 * 	seed \n (optional: seed of the random streams, a fresh seed if absent)
+	 * 	record_interval \n (optional: simulation time between graphed samples,
+	 * 		0 or absent to sample by events)
+	 * 	record_every \n (optional: events between graphed samples, 1 if absent)
+	 * 	trace \n (optional: binary event trace file, replay it with TraceReplayer)
+	 * 	checks \n (optional: invariant checks, "off", "every N" events or
+	 * 		"probability P" per event, every 1000 events if absent)
+	 * 	checkpoint \n (optional: snapshot file and wall clock seconds between
+	 * 		snapshots, 600 if left out; continue with "Sim resume <file>".
+	 * 		A resumed run appends to its trajectory file and writes its
+	 * 		event trace to trace + ".resumed")
+	 * 	render \n (optional: prefix of chart image files, then "png" or "svg",
+	 * 		width and height in pixels and "minmax" or "lttb" decimation,
+	 * 		png 800 600 minmax if left out; charts open in windows if absent,
+	 * 		or go to files at the exportTo prefix when there is no display;
+	 * 		"off" to draw no charts and keep no series, for runs that only
+	 * 		need the trajectory file. Charts show at most SeriesSink.POINTS
+	 * 		evenly spread samples of the run)
+	 * 	live \n (optional: "on" to update the charts in windows while running)
+	 * 	stop \n (optional: stopping criteria, any of "time T" to stop at simulation
+	 * 		time T, "wall S" to stop after S wall clock seconds, "infected" to stop
+	 * 		when every bacterium is infected and "steady W [K [tol]]" to stop when
+	 * 		the averages over the last K windows of simulation time W (5 if left
+	 * 		out) agree within relative tolerance tol (0.01 if left out))
+	 * @return parameters read, defaults for any that could not be read
 	 */
-	public static void getInfo(){
+	public static Parameters getInfo(){
 		BufferedReader br;
 		File input;
+		Parameters params = new Parameters();
 		
 		try{
 			/* get file name */
@@ -196,19 +196,80 @@ public class Sim{
 			br.close();
 			
 			/* get file parameters */
-			br = new BufferedReader(new FileReader(input));
-			lp_start = Integer.valueOf(br.readLine());
-			ba_start = Integer.valueOf(br.readLine());
-			step_max = Integer.valueOf(br.readLine());
-			exportTo = br.readLine();
-			br.close();
+			read(input, params);
 
 			
 		}
 		catch(Exception e){
 			
 		}
-		
+		return params;
+	}
+	
+	/**
+	 * Reads a parameter file, one value per line in the order of getInfo's
+	 * prompt; lines after step_max, exportTo and method may be left out
+	 * @param input - parameter file
+	 * @param params - parameters to fill in, keeping the values of missing lines
+	 * @throws IOException if the file cannot be read
+	 */
+	static void read(File input, Parameters params) throws IOException{
+		BufferedReader br = new BufferedReader(new FileReader(input));
+		params.lp_start = Integer.valueOf(br.readLine());
+		params.ba_start = Integer.valueOf(br.readLine());
+		params.step_max = Integer.valueOf(br.readLine());
+		params.exportTo = br.readLine();
+		params.method = br.readLine();
+		String width = br.readLine();
+		if(width != null) params.bin_width = Double.valueOf(width);
+		String seed = br.readLine();
+		if(seed != null) params.seed = Long.parseLong(seed.trim());
+		String interval = br.readLine();
+		if(interval != null) params.record_interval = Double.valueOf(interval);
+		String every = br.readLine();
+		if(every != null) params.record_every = Integer.valueOf(every.trim());
+		params.trace = br.readLine();
+		String checks = br.readLine();
+		if(checks != null){
+			String[] words = checks.trim().split("\\s+");
+			if(words[0].equalsIgnoreCase("off")) params.check_every = 0;
+			else if(words[0].equalsIgnoreCase("every")) params.check_every = Integer.valueOf(words[1]);
+			else if(words[0].equalsIgnoreCase("probability")) params.check_probability = Double.valueOf(words[1]);
+		}
+		String checkpoint = br.readLine();
+		if(checkpoint != null && checkpoint.trim().length() > 0){
+			String[] words = checkpoint.trim().split("\\s+");
+			params.checkpoint = words[0];
+			if(words.length > 1) params.checkpoint_every = Double.valueOf(words[1]);
+		}
+		String render = br.readLine();
+		if(render != null && render.trim().length() > 0){
+			String[] words = render.trim().split("\\s+");
+			params.render = words[0];
+			if(words.length > 1) params.render_format = words[1].toLowerCase();
+			if(words.length > 3){
+				params.render_width = Integer.valueOf(words[2]);
+				params.render_height = Integer.valueOf(words[3]);
+			}
+			if(words.length > 4) params.decimation = words[4].toLowerCase();
+		}
+		String live = br.readLine();
+		if(live != null) params.live = live.trim().equalsIgnoreCase("on");
+		String stop = br.readLine();
+		if(stop != null && stop.trim().length() > 0){
+			String[] words = stop.trim().split("\\s+");
+			for(int i = 0; i < words.length; i++){
+				if(words[i].equalsIgnoreCase("time")) params.time_max = Double.valueOf(words[++i]);
+				else if(words[i].equalsIgnoreCase("wall")) params.wall_max = Double.valueOf(words[++i]);
+				else if(words[i].equalsIgnoreCase("infected")) params.stop_infected = true;
+				else if(words[i].equalsIgnoreCase("steady")){
+					params.steady_window = Double.valueOf(words[++i]);
+					if(i + 1 < words.length && words[i + 1].matches("\\d+")) params.steady_windows = Integer.valueOf(words[++i]);
+					if(i + 1 < words.length && words[i + 1].matches("[0-9.eE+-]+")) params.steady_tolerance = Double.valueOf(words[++i]);
+				}
+			}
+		}
+		br.close();
 	}
 	
 	/**
@@ -224,29 +285,27 @@ public class Sim{
 	}
 	
 	/**
-	 * Prints data to a text file with "seriesName" as the file name
+	 * Graphs data in a window, or to the file params.render + the title
+	 * in lower case with underscores + the format, e.g. "average_resistance.png"
 	 * @param series
-	 * @param seriesName
+	 * @param Title
+	 * @param x_axis
+	 * @param y_axis
+	 * @param params - render and decimation settings
 	 */
-	public static void printData(XYSeries[] series){
-		for(XYSeries nextSeries : series){
-		File newFile = new File(exportTo + nextSeries.getKey() +".txt");
-		
+	public static void graph(XYSeries[] series, String Title, String x_axis, String y_axis, Parameters params){
+		if(params.render == null){
+			new Graph(series, Title, x_axis, y_axis, params.decimation);
+			return;
+		}
+		File file = new File(params.render + Title.toLowerCase().replace(' ', '_') + "." + params.render_format);
 		try {
-			BufferedWriter bw = new BufferedWriter(new FileWriter(newFile));
-			Iterator dataIter = nextSeries.getItems().iterator();
-			while(dataIter.hasNext()){
-				XYDataItem dataItem = (XYDataItem) dataIter.next();
-				bw.write(dataItem.getX() + "\t" + dataItem.getY() + "\n");
-			}
-			
-			bw.close();
+			Graph.render(series, Title, x_axis, y_axis, file, params.render_format,
+					params.render_width, params.render_height, params.decimation);
+			System.out.println("Chart written to " + file);
 		} catch (IOException e) {
-			// TODO Auto-generated catch block
 			e.printStackTrace();
 		}
 	}
-		
-	}
 	
 }
\ No newline at end of file
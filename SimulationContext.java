@@ -0,0 +1,453 @@
+package virus_Bacteria_Simulation;
+
+import java.io.File;
+import java.io.IOException;
+
+import virus_Bacteria_Simulation.StoppingCriterion.STOP_REASON;
+
+/**
+ * All state of one simulation run: time, random number generators, event
+ * scheduler, populations, running sums and the trajectory recorder. Organisms,
+ * schedulers and backends hold a reference to the context they belong to
+ * instead of using static fields, so independent runs can share a JVM and
+ * run on different threads.
+ *
+ * Randomness comes only from two streams split off a RandomStream seeded
+ * with the run's seed, so a run is a pure function of its parameters and
+ * seed: the same parameters and seed give a bit-identical trajectory on any
+ * JVM and thread, whatever else runs concurrently.
+ *
+ * A run can be saved to a Snapshot between events and resumed from it; the
+ * resumed run continues bit-identically, as if it had never stopped.
+ * @author Parker, Huttner
+ *
+ */
+public class SimulationContext {
+
+	/* Parameters */
+	final Parameters params;
+	final long seed; //Seed the random streams are derived from
+
+	/* Simulation State */
+	double t; //Current time in simulation
+	RandomStream randy; //Random stream for phage and event selection
+	RandomStream rand; //Random stream for bacteria
+	Scheduler scheduler; //Pool of events
+	OrganismScheduler org_scheduler; //The same pool, taking events from organism objects; null with the compact backend
+	Population<Lambda_phage> lps = new Population<Lambda_phage>(); //Free lambda phage
+	Population<Lambda_phage> pro = new Population<Lambda_phage>(); //Prophage inside bacteria
+	Population<Bacterium> bas = new Population<Bacterium>();
+	CompactPopulation compact; //Compact population backend, null when organisms are objects
+	TauLeaper leaper; //Tau-leaping solver, null for exact event by event simulation
+	HybridScheduler hybrid; //Hybrid scheduler holding free phage as a density, null otherwise
+	boolean extinct; //Run ended because bacteria or phage died out
+	STOP_REASON stop_reason; //Why the run ended, null while running
+	StoppingCriteria stopping; //Criteria that end the run early
+	Recorder recorder; //Samples the trajectory for its sinks
+	EventTrace trace; //Binary event trace, null if not traced
+	InvariantChecker checker; //Sampled consistency checks
+	Checkpointer checkpointer; //Periodic snapshots, null if not checkpointed
+	boolean populated; //Starting populations exist, set when resumed
+	long next_id; //Id of the next organism created
+	Biology bio; //Rate constants and mutation model, those of params
+	double[] free_rates; //Rates of a free virus's DENATURE and INFECT events
+	Lambda_phage[] born; //Scratch array for the progeny of a burst
+
+	/* Running Statistics */
+	TraitStatistics bas_stats = new TraitStatistics(); //resistance levels of bacteria
+	TraitStatistics lps_stats = new TraitStatistics(); //resistance levels of lambda phage, free and prophage (excluding a hybrid density)
+	int bas_infected = 0;//sum of bacteria infected;
+	int step_sum = 0; //Sum over fired events of the events pending when each fired, compared with step_max
+	long events; //Events fired so far
+
+	/**
+	 * Creates a run seeded with params.seed
+	 * @param params - run parameters
+	 */
+	public SimulationContext(Parameters params) {
+		this(params, params.seed);
+	}
+
+	/**
+	 * Creates the random streams, then the scheduler and backend named by
+	 * params.method
+	 * @param params - run parameters
+	 * @param seed - seed of this run
+	 */
+	public SimulationContext(Parameters params, long seed) {
+		this.params = params;
+		this.seed = seed;
+		this.bio = params.bio;
+		free_rates = new double[]{bio.rate_denature, bio.rate_infection};
+		born = new Lambda_phage[bio.progeny];
+		RandomStream root = new RandomStream(seed);
+		randy = root.split();
+		rand = root.split();
+		recorder = new Recorder(this, params.record_interval, params.record_every, Recorder.CAPACITY);
+		checker = new InvariantChecker(this, params.check_every, params.check_probability);
+		stopping = new StoppingCriteria(this);
+		String method = params.method;
+		if ("direct".equalsIgnoreCase(method)) org_scheduler = new DirectScheduler(this);
+		else if ("aggregate".equalsIgnoreCase(method)) org_scheduler = new AggregateScheduler(this);
+		else if ("compact".equalsIgnoreCase(method)) {
+			compact = new CompactPopulation(this);
+			scheduler = new CompactScheduler(this, compact);
+		}
+		else if ("binned".equalsIgnoreCase(method) || "tau".equalsIgnoreCase(method)) {
+			compact = new CompactPopulation(this, new PhageBins(params.bin_width));
+			scheduler = new CompactScheduler(this, compact);
+			if ("tau".equalsIgnoreCase(method)) leaper = new TauLeaper(this, compact, (CompactScheduler) scheduler);
+		}
+		else if ("hybrid".equalsIgnoreCase(method)) {
+			hybrid = new HybridScheduler(this, new PhageBins(params.bin_width));
+			org_scheduler = hybrid;
+		}
+		else org_scheduler = new NextReactionScheduler(this);
+		if (org_scheduler != null) scheduler = org_scheduler;
+	}
+
+	/**
+	 * Continues a run from a snapshot written by a Checkpointer
+	 * @param file - snapshot file
+	 * @return run in the saved state, ready to run on from it
+	 */
+	public static SimulationContext resume(File file) throws IOException {
+		return resume(Snapshot.read(file));
+	}
+
+	/**
+	 * Continues a run from a snapshot, in this or another thread; resuming
+	 * the same saved state twice gives two independent copies of the run
+	 * @param in - snapshot positioned after the header
+	 * @return run in the saved state, ready to run on from it
+	 */
+	public static SimulationContext resume(Snapshot in) {
+		Parameters params = new Parameters();
+		params.lp_start = in.getInt();
+		params.ba_start = in.getInt();
+		params.step_max = in.getInt();
+		params.exportTo = in.getString();
+		params.method = in.getString();
+		params.bin_width = in.getDouble();
+		params.record_interval = in.getDouble();
+		params.record_every = in.getInt();
+		params.trace = in.getString();
+		params.check_every = in.getInt();
+		params.check_probability = in.getDouble();
+		params.debug = in.getBoolean();
+		params.seed = in.getLong();
+		params.checkpoint = in.getString();
+		params.checkpoint_every = in.getDouble();
+		params.render = in.getString();
+		params.render_format = in.getString();
+		params.render_width = in.getInt();
+		params.render_height = in.getInt();
+		params.decimation = in.getString();
+		params.live = in.getBoolean();
+		params.time_max = in.getDouble();
+		params.wall_max = in.getDouble();
+		params.stop_infected = in.getBoolean();
+		params.steady_window = in.getDouble();
+		params.steady_windows = in.getInt();
+		params.steady_tolerance = in.getDouble();
+		params.bio.restore(in);
+
+		SimulationContext ctx = new SimulationContext(params, in.getLong());
+		ctx.restore(in);
+		return ctx;
+	}
+
+	/**
+	 * Replaces the random streams by streams split off a new seed and draws
+	 * the pending firing times of the next reaction method again from them,
+	 * so copies of a run resumed from one snapshot go separate ways from the
+	 * first event. The other schedulers draw every next event afresh. The
+	 * seed field, which seeds the invariant checker, is kept.
+	 * @param seed - seed of the new streams
+	 */
+	public void reseed(long seed) {
+		RandomStream root = new RandomStream(seed);
+		randy = root.split();
+		rand = root.split();
+		if (hybrid != null) hybrid.redraw();
+		else if (scheduler instanceof NextReactionScheduler) ((NextReactionScheduler) scheduler).redraw();
+	}
+
+	/**
+	 * Records the run in an event trace. Must be called before run; the
+	 * compact backend cannot be traced. Organisms that already exist, in a
+	 * resumed run, are recorded as the starting populations.
+	 * @param trace - event trace
+	 */
+	public void setTrace(EventTrace trace) {
+		if (compact != null) throw new IllegalStateException("the compact backend has no organisms to trace");
+		this.trace = trace;
+		for (Bacterium ba : bas) trace.added(EventTrace.BACTERIA, ba);
+		for (Lambda_phage lp : lps) trace.added(EventTrace.FREE, lp);
+		for (Lambda_phage lp : pro) trace.added(EventTrace.PROPHAGE, lp);
+		bas.setTrace(trace, EventTrace.BACTERIA);
+		lps.setTrace(trace, EventTrace.FREE);
+		pro.setTrace(trace, EventTrace.PROPHAGE);
+	}
+
+	/**
+	 * Saves the run periodically while it runs. Must be called before run.
+	 * @param checkpointer - checkpointer of this run
+	 */
+	public void setCheckpointer(Checkpointer checkpointer) {
+		this.checkpointer = checkpointer;
+	}
+
+	/**
+	 * Creates the starting populations and runs until step_sum reaches
+	 * step_max, bacteria or phage are extinct, time_max is reached or a
+	 * stopping criterion is met, then flushes the recorder. stop_reason
+	 * tells which. step_sum grows by the size of the event pool with every
+	 * event fired, the work of the original direct scan, so step_max stops
+	 * runs of every method after about the same work; ctx.events counts
+	 * the events themselves.
+	 */
+	public void run() {
+		try {
+			simulate();
+		}
+		finally {
+			recorder.flush();
+		}
+	}
+
+	/**
+	 * Creates the starting number of bacteria and virus, unless they exist
+	 */
+	void populate() {
+		if (populated) return;
+		if (compact != null) compact.populate(params.lp_start, params.ba_start);
+		else {
+			for (int i = 0; i < params.lp_start; i++) lps.add(new Lambda_phage(this));
+			for (int i = 0; i < params.ba_start; i++) bas.add(new Bacterium(this));
+		}
+		populated = true;
+	}
+
+	private void simulate() {
+
+		populate();
+
+		/* Run simulation */
+		while (leaper != null) {
+
+			/* If system still valid */
+			if (bas_size() != 0 && lps_size() != 0) {
+
+				int pool = scheduler.size(); //Events pending as the leap starts
+				long fired = leaper.leap(); //Leap!
+				step_sum = (int) Math.min(step_sum + fired * pool, Integer.MAX_VALUE);
+				events += fired;
+
+				/* Record Relevant Variables */
+				recorder.advance(t, fired);
+
+				if (params.debug) System.out.println(String.valueOf(t) + " LEAP " + fired);
+
+				checker.leaped(fired);
+				if (checkpointer != null) checkpointer.poll(fired);
+
+				if (step_sum >= params.step_max) {
+					stop_reason = STOP_REASON.STEP_MAX;
+					return;
+				}
+				if (fired == 0) {
+					stop_reason = STOP_REASON.NO_EVENTS;
+					return;
+				}
+				if (params.time_max > 0 && t >= params.time_max) {
+					stop_reason = STOP_REASON.TIME;
+					return;
+				}
+				if ((stop_reason = stopping.poll(fired)) != null) return;
+			}
+			else {
+				extinct = true;
+				stop_reason = STOP_REASON.EXTINCT;
+				return;
+			}
+		}
+		while (true) {
+
+			if (checkpointer != null) checkpointer.poll(1);
+
+			/* Find the event that happens first */
+			Event first_event = scheduler.next();
+
+			/* If system still valid */
+			if (first_event != null && bas_size() != 0 && lps_size() != 0) {
+
+				/* The state holds until time_max if the next event is later */
+				if (params.time_max > 0 && first_event.time > params.time_max) {
+					recorder.advance(params.time_max, 0);
+					t = params.time_max;
+					stop_reason = STOP_REASON.TIME;
+					return;
+				}
+
+				/* Store number of steps that have occurred */
+				step_sum += scheduler.size();
+
+				/* Record Relevant Variables */
+				recorder.advance(first_event.time, 1);
+
+				t = first_event.time; //Update the time
+				if (trace != null) trace.event(t, first_event.type, first_event.org);
+				first_event.org.execute(first_event.type); //Call event!
+				scheduler.fired(first_event);
+				events++;
+
+				if (params.debug) System.out.println(String.valueOf(t) + " " + first_event.type.toString() + " ");
+
+				if (step_sum >= params.step_max) {
+					stop_reason = STOP_REASON.STEP_MAX;
+					return;
+				}
+
+				checker.executed(t, first_event.type, first_event.org);
+
+				if ((stop_reason = stopping.poll(1)) != null) return;
+			}
+			else {
+				extinct = true;
+				stop_reason = first_event == null && bas_size() != 0 && lps_size() != 0 ? STOP_REASON.NO_EVENTS : STOP_REASON.EXTINCT;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Writes the complete state of the run to a snapshot: parameters, time,
+	 * counters, random streams, statistics, recorder and checker positions,
+	 * populations and pending events. Called between events; the recorder
+	 * must be flushed first.
+	 * @param out - snapshot to append to
+	 */
+	void save(Snapshot out) {
+		out.putInt(params.lp_start);
+		out.putInt(params.ba_start);
+		out.putInt(params.step_max);
+		out.putString(params.exportTo);
+		out.putString(params.method);
+		out.putDouble(params.bin_width);
+		out.putDouble(params.record_interval);
+		out.putInt(params.record_every);
+		out.putString(params.trace);
+		out.putInt(params.check_every);
+		out.putDouble(params.check_probability);
+		out.putBoolean(params.debug);
+		out.putLong(params.seed);
+		out.putString(params.checkpoint);
+		out.putDouble(params.checkpoint_every);
+		out.putString(params.render);
+		out.putString(params.render_format);
+		out.putInt(params.render_width);
+		out.putInt(params.render_height);
+		out.putString(params.decimation);
+		out.putBoolean(params.live);
+		out.putDouble(params.time_max);
+		out.putDouble(params.wall_max);
+		out.putBoolean(params.stop_infected);
+		out.putDouble(params.steady_window);
+		out.putInt(params.steady_windows);
+		out.putDouble(params.steady_tolerance);
+		params.bio.save(out);
+		out.putLong(seed);
+
+		out.putDouble(t);
+		out.putLong(next_id);
+		out.putInt(bas_infected);
+		out.putInt(step_sum);
+		out.putLong(events);
+		randy.save(out);
+		rand.save(out);
+		bas_stats.save(out);
+		lps_stats.save(out);
+		recorder.save(out);
+		checker.save(out);
+
+		if (compact != null) compact.save(out);
+		else {
+			out.putInt(bas.size());
+			for (Bacterium ba : bas) {
+				out.putLong(ba.id);
+				out.putDouble(ba.prob_surface);
+				out.putDouble(ba.prob_enzymes);
+			}
+			out.putInt(lps.size());
+			for (Lambda_phage lp : lps) {
+				out.putLong(lp.id);
+				out.putDouble(lp.prob_surface);
+				out.putDouble(lp.prob_enzymes);
+			}
+			out.putInt(pro.size());
+			for (Lambda_phage lp : pro) {
+				out.putLong(lp.id);
+				out.putDouble(lp.prob_surface);
+				out.putDouble(lp.prob_enzymes);
+				out.putInt(lp.current_ba.slot);
+			}
+		}
+		scheduler.save(out);
+	}
+
+	/**
+	 * Replaces the state of a new run with the state written by save,
+	 * after the parameters and seed
+	 */
+	private void restore(Snapshot in) {
+		t = in.getDouble();
+		next_id = in.getLong();
+		bas_infected = in.getInt();
+		step_sum = in.getInt();
+		events = in.getLong();
+		randy = RandomStream.restore(in);
+		rand = RandomStream.restore(in);
+		bas_stats.restore(in);
+		lps_stats.restore(in);
+		recorder.restore(in);
+		checker.restore(in);
+
+		if (compact != null) compact.restore(in);
+		else {
+			int count = in.getInt();
+			for (int i = 0; i < count; i++) bas.add(new Bacterium(this, in.getLong(), in.getDouble(), in.getDouble()));
+			count = in.getInt();
+			for (int i = 0; i < count; i++) lps.add(new Lambda_phage(this, in.getLong(), in.getDouble(), in.getDouble()));
+			count = in.getInt();
+			for (int i = 0; i < count; i++) {
+				Lambda_phage lp = new Lambda_phage(this, in.getLong(), in.getDouble(), in.getDouble());
+				Bacterium host = bas.get(in.getInt());
+				lp.current_ba = host;
+				host.infected = true;
+				host.lp = lp;
+				pro.add(lp);
+			}
+		}
+		scheduler.restore(in);
+		populated = true;
+	}
+
+	/**
+	 * @return number of lambda phage, free and prophage
+	 */
+	public int lps_size() {
+		if (compact != null) return compact.free + compact.prophage;
+		if (hybrid != null) return lps.size() + pro.size() + hybrid.free();
+		return lps.size() + pro.size();
+	}
+
+	/**
+	 * @return number of bacteria
+	 */
+	public int bas_size() {
+		if (compact != null) return compact.bacteria;
+		return bas.size();
+	}
+
+}
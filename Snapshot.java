@@ -0,0 +1,323 @@
+package virus_Bacteria_Simulation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import virus_Bacteria_Simulation.Organism.EVENT_TYPE;
+
+/**
+ * Binary snapshot of the complete state of a simulation, used to checkpoint
+ * a run and resume it later. The format is
+ *
+ * 	header: magic "PHCK", version (short)
+ * 	parameters, seed, time and counters of the SimulationContext
+ * 	random streams, trait statistics, recorder and checker positions
+ * 	populations in slot order (organism objects or the compact arrays)
+ * 	pending events of the scheduler
+ *
+ * Values are fixed width big endian, arrays a length followed by their
+ * elements, strings a byte length (-1 for null) and UTF-8 bytes. Events
+ * name their organism by population and slot, so the populations are
+ * always restored before the scheduler. Size grows linearly with the
+ * populations and the number of pending events.
+ *
+ * Each class saves and restores its own part through save and restore
+ * methods; this class only holds the buffer and the encoding.
+ * @author Parker, Huttner
+ *
+ */
+public class Snapshot {
+
+	/* Class Variables */
+	static final int MAGIC = 0x5048434B; // "PHCK"
+	static final short VERSION = 7;
+	static final EVENT_TYPE[] TYPES = EVENT_TYPE.values();
+
+	/* Instance Variables */
+	private ByteBuffer buffer;
+
+	/**
+	 * Creates an empty snapshot holding only the header
+	 */
+	public Snapshot() {
+		buffer = ByteBuffer.allocate(1 << 16);
+		clear();
+	}
+
+	private Snapshot(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	/**
+	 * Reads a snapshot file and checks its header
+	 * @param file - snapshot file
+	 * @return snapshot positioned after the header
+	 */
+	public static Snapshot read(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) throw new IOException(file + " is too large for a snapshot");
+			ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer) < 0) throw new IOException("truncated snapshot " + file);
+			}
+			buffer.flip();
+			if (buffer.remaining() < 6 || buffer.getInt() != MAGIC) throw new IOException(file + " is not a snapshot");
+			short version = buffer.getShort();
+			if (version != VERSION) throw new IOException("unsupported snapshot version " + version);
+			return new Snapshot(buffer);
+		}
+		finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Empties the snapshot so it can be reused, keeping its buffer
+	 */
+	public void clear() {
+		buffer.clear();
+		buffer.putInt(MAGIC);
+		buffer.putShort(VERSION);
+	}
+
+	/**
+	 * Writes the snapshot to a temporary file of its own next to the file,
+	 * forces it to disk and renames it over the file, so the file always
+	 * holds a complete snapshot, even with several writers
+	 * @param file - snapshot file, replaced if it exists
+	 */
+	public void write(File file) throws IOException {
+		File temporary = Files.createTempFile(file.getAbsoluteFile().getParentFile().toPath(), file.getName(), ".tmp").toFile();
+		boolean written = false;
+		try {
+			RandomAccessFile raf = new RandomAccessFile(temporary, "rw");
+			try {
+				FileChannel channel = raf.getChannel();
+				ByteBuffer bytes = buffer.duplicate();
+				bytes.flip();
+				while (bytes.hasRemaining()) channel.write(bytes);
+				channel.force(true);
+			}
+			finally {
+				raf.close(); // before the rename, which some platforms refuse on an open file
+			}
+			Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			written = true;
+		}
+		finally {
+			if (!written) Files.deleteIfExists(temporary.toPath());
+		}
+	}
+
+	/**
+	 * @return snapshot reading what was written to this one so far, from
+	 * after the header; it shares the bytes, so this snapshot must not be
+	 * cleared while it is read
+	 */
+	public Snapshot reader() {
+		ByteBuffer bytes = buffer.duplicate();
+		bytes.flip();
+		bytes.position(6);
+		return new Snapshot(bytes);
+	}
+
+	/**
+	 * @return bytes in the snapshot
+	 */
+	public int size() {
+		return buffer.position();
+	}
+
+	void putInt(int value) {
+		reserve(4);
+		buffer.putInt(value);
+	}
+
+	void putLong(long value) {
+		reserve(8);
+		buffer.putLong(value);
+	}
+
+	void putDouble(double value) {
+		reserve(8);
+		buffer.putDouble(value);
+	}
+
+	void putBoolean(boolean value) {
+		reserve(1);
+		buffer.put((byte) (value ? 1 : 0));
+	}
+
+	void putString(String value) {
+		if (value == null) {
+			putInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		putInt(bytes.length);
+		reserve(bytes.length);
+		buffer.put(bytes);
+	}
+
+	/**
+	 * @param values - array holding at least n values
+	 * @param n - number of values written, from the start of the array
+	 */
+	void putDoubles(double[] values, int n) {
+		putInt(n);
+		reserve(8L * n);
+		buffer.asDoubleBuffer().put(values, 0, n);
+		buffer.position(buffer.position() + 8 * n);
+	}
+
+	/**
+	 * @param values - array holding at least n values
+	 * @param n - number of values written, from the start of the array
+	 */
+	void putInts(int[] values, int n) {
+		putInt(n);
+		reserve(4L * n);
+		buffer.asIntBuffer().put(values, 0, n);
+		buffer.position(buffer.position() + 4 * n);
+	}
+
+	void putLongs(long[] values, int n) {
+		putInt(n);
+		reserve(8L * n);
+		buffer.asLongBuffer().put(values, 0, n);
+		buffer.position(buffer.position() + 8 * n);
+	}
+
+	/**
+	 * Writes the population and slot of a Bacterium or Lambda_phage
+	 */
+	void putOrganism(Organism org) {
+		if (org instanceof Bacterium) putInt(EventTrace.BACTERIA);
+		else if (((Lambda_phage) org).current_ba == null) putInt(EventTrace.FREE);
+		else putInt(EventTrace.PROPHAGE);
+		putInt(org.getSlot());
+	}
+
+	/**
+	 * Writes a pending event: its organism, its position among the
+	 * organism's handles, type, rate and firing time
+	 */
+	void putEvent(Event evt) {
+		putOrganism(evt.org);
+		Event[] handles = evt.org.getEvents();
+		int handle = 0;
+		while (handles[handle] != evt) handle++;
+		putInt(handle);
+		putInt(evt.type.ordinal());
+		putDouble(evt.lambda);
+		putDouble(evt.time);
+	}
+
+	int getInt() {
+		return buffer.getInt();
+	}
+
+	long getLong() {
+		return buffer.getLong();
+	}
+
+	double getDouble() {
+		return buffer.getDouble();
+	}
+
+	boolean getBoolean() {
+		return buffer.get() != 0;
+	}
+
+	String getString() {
+		int length = buffer.getInt();
+		if (length < 0) return null;
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @param capacity - minimum length of the returned array
+	 * @return array holding the values written, followed by zeros up to capacity
+	 */
+	double[] getDoubles(int capacity) {
+		int n = buffer.getInt();
+		double[] values = new double[Math.max(n, capacity)];
+		buffer.asDoubleBuffer().get(values, 0, n);
+		buffer.position(buffer.position() + 8 * n);
+		return values;
+	}
+
+	/**
+	 * @param capacity - minimum length of the returned array
+	 * @return array holding the values written, followed by zeros up to capacity
+	 */
+	int[] getInts(int capacity) {
+		int n = buffer.getInt();
+		int[] values = new int[Math.max(n, capacity)];
+		buffer.asIntBuffer().get(values, 0, n);
+		buffer.position(buffer.position() + 4 * n);
+		return values;
+	}
+
+	long[] getLongs(int capacity) {
+		int n = buffer.getInt();
+		long[] values = new long[Math.max(n, capacity)];
+		buffer.asLongBuffer().get(values, 0, n);
+		buffer.position(buffer.position() + 8 * n);
+		return values;
+	}
+
+	/**
+	 * @param ctx - simulation whose populations are already restored
+	 * @return organism written by putOrganism
+	 */
+	Organism getOrganism(SimulationContext ctx) {
+		int population = buffer.getInt();
+		int slot = buffer.getInt();
+		switch (population) {
+			case EventTrace.BACTERIA: return ctx.bas.get(slot);
+			case EventTrace.FREE: return ctx.lps.get(slot);
+			default: return ctx.pro.get(slot);
+		}
+	}
+
+	/**
+	 * Recreates an event written by putEvent and stores its handle in the
+	 * same position of its organism
+	 * @param ctx - simulation whose populations are already restored
+	 * @return restored event, not yet in any scheduler
+	 */
+	Event getEvent(SimulationContext ctx) {
+		Organism org = getOrganism(ctx);
+		int handle = buffer.getInt();
+		EVENT_TYPE type = TYPES[buffer.getInt()];
+		Event evt = new Event(org, buffer.getDouble(), type);
+		evt.time = buffer.getDouble();
+		org.getEvents()[handle] = evt;
+		return evt;
+	}
+
+	/**
+	 * Makes room for at least the given number of bytes in the buffer
+	 */
+	private void reserve(long bytes) {
+		if (buffer.remaining() >= bytes) return;
+		long capacity = Math.max(2L * buffer.capacity(), buffer.position() + bytes);
+		if (capacity > Integer.MAX_VALUE) throw new IllegalStateException("snapshot larger than 2 GB");
+		ByteBuffer bigger = ByteBuffer.allocate((int) capacity);
+		buffer.flip();
+		bigger.put(buffer);
+		buffer = bigger;
+	}
+
+}
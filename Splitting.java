@@ -0,0 +1,259 @@
+package virus_Bacteria_Simulation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import virus_Bacteria_Simulation.StoppingCriterion.STOP_REASON;
+
+/**
+ * Estimates the probability that the bacteria's mean resistance reaches a
+ * target before the run ends otherwise (the phage cleared, bacteria
+ * extinct, or the step, time or other limits of the parameters) by
+ * fixed-effort multilevel splitting with weights.
+ *
+ * The progress coordinate is a function of the bacteria's mean
+ * prob_surface and prob_enzymes (COORDINATES), and levels l_1 < ... < l_m
+ * = target cut it into stages. Each stage runs a fixed number of walkers,
+ * each a copy of the simulation with a statistical weight, until they
+ * reach the stage's level or end. The walkers that reached it are saved to
+ * in-memory snapshots and resampled, systematically in proportion to
+ * their weight, into the walkers of the next stage: a copy is resumed
+ * from the snapshot with freshly seeded random streams and gets an equal
+ * share of the weight that reached the level. Resampling keeps the
+ * expected total weight, so the weight reaching the target is an unbiased
+ * estimate of the probability, and each stage only needs to estimate a
+ * conditional probability that is not rare.
+ *
+ * The estimate's relative variance is about the sum over stages of
+ * (1 - p_k) / (N p_k), with p_k the fraction of weight reaching level k
+ * and N the walkers per stage; run reports its square root as the
+ * relative error. It holds once stages are many walkers deep; independent
+ * estimates with different seeds give an exact error.
+ *
+ * Copies of a snapshot share its state but not its pending firing times,
+ * which reseed draws again, so they are independent given the state they
+ * start from. Walkers of a stage run in parallel; their seeds and the
+ * resampling come from one stream seeded with params.seed, so the
+ * estimate does not depend on the number of threads.
+ * @author Parker, Huttner
+ *
+ */
+public class Splitting {
+
+	/* Class Variables */
+	static final String[] COORDINATES = {"surface", "enzymes", "max", "min"}; // mean prob_surface, mean prob_enzymes, larger or smaller of both
+
+	/* Instance Variables */
+	private Parameters params; // parameters of every walker
+	private double[] levels; // ascending, the last is the target
+	private int walkers; // walkers per stage
+	private int coordinate; // index in COORDINATES
+	private ForkJoinPool pool;
+	private double[] reached; // weight reaching each level, after run
+	private long[] events; // events fired in each stage, after run
+
+	/**
+	 * @param params - parameters of every walker
+	 * @param levels - ascending levels of the progress coordinate, the last is the target
+	 * @param walkers - walkers per stage
+	 * @param coordinate - one of COORDINATES
+	 * @param pool - pool the walkers of a stage run on
+	 */
+	public Splitting(Parameters params, double[] levels, int walkers, String coordinate, ForkJoinPool pool) {
+		this.params = params.copy();
+		this.params.debug = false;
+		this.params.exportTo = null;
+		this.params.trace = null;
+		this.params.checkpoint = null;
+		this.params.live = false;
+		this.levels = levels.clone();
+		this.walkers = walkers;
+		this.coordinate = -1;
+		for (int i = 0; i < COORDINATES.length; i++) if (COORDINATES[i].equalsIgnoreCase(coordinate)) this.coordinate = i;
+		if (this.coordinate < 0) throw new IllegalArgumentException("unknown progress coordinate " + coordinate);
+		for (int k = 1; k < levels.length; k++) {
+			if (levels[k] <= levels[k - 1]) throw new IllegalArgumentException("levels must increase");
+		}
+		this.pool = pool;
+	}
+
+	/**
+	 * Runs every stage, stopping early if no walker reaches a level
+	 * @return estimated probability of reaching the target
+	 */
+	public double run() throws InterruptedException, ExecutionException {
+		RandomStream stream = new RandomStream(params.seed);
+		reached = new double[levels.length];
+		events = new long[levels.length];
+
+		/* stage 0 walkers start from the initial state */
+		List<Walker> current = new ArrayList<Walker>();
+		for (int i = 0; i < walkers; i++) current.add(new Walker(null, stream.nextLong(), 1d / walkers, 0));
+
+		for (int k = 0; k < levels.length; k++) {
+			List<Future<Walker>> futures = new ArrayList<Future<Walker>>();
+			for (Walker walker : current) futures.add(pool.submit(walker));
+			List<Walker> successes = new ArrayList<Walker>();
+			for (Future<Walker> future : futures) {
+				Walker walker = future.get();
+				events[k] += walker.fired;
+				if (walker.state != null) {
+					successes.add(walker);
+					reached[k] += walker.weight;
+				}
+			}
+			if (successes.isEmpty() || k == levels.length - 1) break;
+			current = resample(successes, reached[k], stream, k + 1);
+		}
+		return reached[levels.length - 1];
+	}
+
+	/**
+	 * @return weight that reached each level in the last run
+	 */
+	public double[] reached() {
+		return reached.clone();
+	}
+
+	/**
+	 * @return events fired in each stage of the last run
+	 */
+	public long[] events() {
+		return events.clone();
+	}
+
+	/**
+	 * @return approximate relative error of the last run's estimate,
+	 * infinite if no walker reached the target
+	 */
+	public double relativeError() {
+		double variance = 0, before = 1;
+		for (int k = 0; k < levels.length; k++) {
+			double p = reached[k] / before;
+			if (p == 0) return Double.POSITIVE_INFINITY;
+			variance += (1 - p) / (walkers * p);
+			before = reached[k];
+		}
+		return Math.sqrt(variance);
+	}
+
+	/**
+	 * Estimates the probability of reaching a resistance target
+	 * @param args - walkers per stage, progress coordinate (one of
+	 * COORDINATES) and the ascending levels, the last being the target
+	 */
+	public static void main(String[] args) throws InterruptedException, ExecutionException {
+		if (args.length < 3) {
+			System.err.println("usage: Splitting <walkers> <surface|enzymes|max|min> <level>... <target>");
+			System.exit(2);
+		}
+		Parameters params = Sim.getInfo();
+		double[] levels = new double[args.length - 2];
+		for (int k = 0; k < levels.length; k++) levels[k] = Double.parseDouble(args[k + 2]);
+
+		ForkJoinPool pool = new ForkJoinPool();
+		Splitting splitting = new Splitting(params, levels, Integer.parseInt(args[0]), args[1], pool);
+		double estimate = splitting.run();
+		pool.shutdown();
+
+		System.out.println();
+		System.out.println("Seed: " + params.seed);
+		System.out.println("level\treached\tconditional\tevents");
+		double before = 1;
+		long total = 0;
+		for (int k = 0; k < levels.length; k++) {
+			System.out.println(levels[k] + "\t" + splitting.reached[k] + "\t" + (before > 0 ? splitting.reached[k] / before : 0) + "\t"
+					+ splitting.events[k]);
+			before = splitting.reached[k];
+			total += splitting.events[k];
+		}
+		System.out.println("Probability: " + estimate + " (relative error about " + splitting.relativeError() + ") after "
+				+ total + " events");
+	}
+
+	/**
+	 * Systematic resampling: walker i is copied about n w_i / total times,
+	 * each copy getting weight total / n
+	 * @param k - stage of the new walkers
+	 */
+	private List<Walker> resample(List<Walker> successes, double total, RandomStream stream, int k) {
+		List<Walker> next = new ArrayList<Walker>(walkers);
+		double step = total / walkers, pointer = stream.nextDouble() * step, cumulative = 0;
+		for (Walker walker : successes) {
+			cumulative += walker.weight;
+			while (pointer < cumulative && next.size() < walkers) {
+				next.add(new Walker(walker.state, stream.nextLong(), step, k));
+				pointer += step;
+			}
+		}
+		while (next.size() < walkers) { // rounding left the last pointer past the total
+			next.add(new Walker(successes.get(successes.size() - 1).state, stream.nextLong(), step, k));
+		}
+		return next;
+	}
+
+	/**
+	 * @return progress coordinate of a run's state, NaN without bacteria
+	 */
+	private double coordinate(SimulationContext ctx) {
+		double sr = ctx.bas_stats.mean(TraitStatistics.SURFACE), enz = ctx.bas_stats.mean(TraitStatistics.ENZYMES);
+		switch (coordinate) {
+			case 0: return sr;
+			case 1: return enz;
+			case 2: return Math.max(sr, enz);
+			default: return Math.min(sr, enz);
+		}
+	}
+
+	/**
+	 * A copy of the simulation with its weight, run until it reaches its
+	 * stage's level or ends
+	 */
+	private class Walker implements Callable<Walker> {
+
+		private Snapshot start; // state the walker starts from, null for the initial state
+		private long seed;
+		private double weight;
+		private int stage; // index of the level to reach
+		private Snapshot state; // state on reaching the level, null if it ended first
+		private long fired; // events the walker fired
+
+		Walker(Snapshot start, long seed, double weight, int stage) {
+			this.start = start;
+			this.seed = seed;
+			this.weight = weight;
+			this.stage = stage;
+		}
+
+		public Walker call() {
+			SimulationContext ctx;
+			if (start == null) ctx = new SimulationContext(params, seed);
+			else {
+				ctx = SimulationContext.resume(start.reader());
+				ctx.reseed(seed);
+			}
+			start = null;
+			ctx.populate();
+			long before = ctx.events;
+			if (!(coordinate(ctx) >= levels[stage])) {
+				final double level = levels[stage];
+				ctx.stopping.add(new StoppingCriterion() {
+					public STOP_REASON check(SimulationContext ctx, long events) {
+						return coordinate(ctx) >= level ? STOP_REASON.LEVEL : null;
+					}
+				});
+				ctx.run();
+				fired = ctx.events - before;
+				if (ctx.stop_reason != STOP_REASON.LEVEL) return this;
+			}
+			state = new Snapshot();
+			ctx.save(state);
+			return this;
+		}
+	}
+
+}
@@ -0,0 +1,186 @@
+package virus_Bacteria_Simulation;
+
+import java.util.Arrays;
+
+import virus_Bacteria_Simulation.StoppingCriterion.STOP_REASON;
+
+/**
+ * Stopping stage of a run: the criteria checked between events, in the
+ * order they were added, the first to give a reason ending the run. The
+ * criteria of the parameters are
+ *
+ * 	WallClock - wall clock budget, counted from the first event of this process
+ * 	FullInfection - every bacterium carries a prophage
+ * 	SteadyState - windowed means of both populations and of the bacteria's
+ * 		resistance means have stopped moving
+ *
+ * and others can be added with add before the run. The step limit,
+ * extinction and the simulation time limit are checked by the simulation
+ * loop itself. Criteria keep no state in snapshots: a resumed run starts
+ * its wall clock budget and steady state windows anew.
+ * @author Parker, Huttner
+ *
+ */
+public class StoppingCriteria {
+
+	/* Instance Variables */
+	private SimulationContext ctx;
+	private StoppingCriterion[] criteria = new StoppingCriterion[0];
+
+	/**
+	 * Creates the criteria set in the run's parameters
+	 * @param ctx - simulation to check
+	 */
+	public StoppingCriteria(SimulationContext ctx) {
+		this.ctx = ctx;
+		Parameters params = ctx.params;
+		if (params.wall_max > 0) add(new WallClock(params.wall_max));
+		if (params.stop_infected) add(new FullInfection());
+		if (params.steady_window > 0) add(new SteadyState(params.steady_window, params.steady_windows, params.steady_tolerance));
+	}
+
+	/**
+	 * @param criterion - criterion checked after those already added
+	 */
+	public void add(StoppingCriterion criterion) {
+		criteria = Arrays.copyOf(criteria, criteria.length + 1);
+		criteria[criteria.length - 1] = criterion;
+	}
+
+	/**
+	 * Called by the simulation between events
+	 * @param events - events since the last call
+	 * @return reason of the first criterion met, null to go on
+	 */
+	STOP_REASON poll(long events) {
+		for (StoppingCriterion criterion : criteria) {
+			STOP_REASON reason = criterion.check(ctx, events);
+			if (reason != null) return reason;
+		}
+		return null;
+	}
+
+	/**
+	 * Stops once a wall clock budget is spent; the clock is read every
+	 * Checkpointer.CLOCK_EVERY events
+	 */
+	public static class WallClock implements StoppingCriterion {
+
+		private long budget; // nanoseconds
+		private long start; // System.nanoTime() of the first check
+		private long countdown; // events until the clock is read
+
+		/**
+		 * @param seconds - wall clock budget
+		 */
+		public WallClock(double seconds) {
+			budget = (long) (seconds * 1e9);
+		}
+
+		public STOP_REASON check(SimulationContext ctx, long events) {
+			if (start == 0) start = System.nanoTime();
+			countdown -= events;
+			if (countdown > 0) return null;
+			countdown = Checkpointer.CLOCK_EVERY;
+			return System.nanoTime() - start >= budget ? STOP_REASON.WALL_CLOCK : null;
+		}
+	}
+
+	/**
+	 * Stops when every bacterium is infected
+	 */
+	public static class FullInfection implements StoppingCriterion {
+
+		public STOP_REASON check(SimulationContext ctx, long events) {
+			int bas = ctx.bas_size();
+			return bas > 0 && ctx.bas_infected >= bas ? STOP_REASON.INFECTED : null;
+		}
+	}
+
+	/**
+	 * Stops in a steady state: the simulation time is cut into windows of
+	 * equal length, and the time averages over a window of the number of
+	 * bacteria, the number of phage and the bacteria's mean prob_surface
+	 * and prob_enzymes are taken. The run is steady when, for each of them,
+	 * the averages of the last few windows differ by at most a tolerance
+	 * relative to their mean magnitude.
+	 */
+	public static class SteadyState implements StoppingCriterion {
+
+		private static final int OBSERVED = 4; // bacteria, phage, mean prob_surface, mean prob_enzymes
+
+		private double window; // simulation time of a window
+		private double tolerance; // largest relative spread of steady window averages
+		private double[][] averages; // ring of the last window averages
+		private long closed; // windows finished
+		private double[] value = new double[OBSERVED]; // state since last_t
+		private double[] integral = new double[OBSERVED]; // time integral over the open window
+		private double last_t = Double.NaN; // time of the last check, NaN before the first
+		private double window_end;
+
+		/**
+		 * @param window - simulation time of a window
+		 * @param windows - windows compared, at least 2
+		 * @param tolerance - largest spread of their averages, relative to the mean magnitude
+		 */
+		public SteadyState(double window, int windows, double tolerance) {
+			this.window = window;
+			this.tolerance = tolerance;
+			averages = new double[Math.max(windows, 2)][OBSERVED];
+		}
+
+		public STOP_REASON check(SimulationContext ctx, long events) {
+			double t = ctx.t;
+			if (Double.isNaN(last_t)) {
+				last_t = t;
+				window_end = t + window;
+				observe(ctx);
+				return null;
+			}
+
+			/* the state observed at the last check held until t */
+			boolean steady = false;
+			while (t >= window_end) {
+				double[] average = averages[(int) (closed++ % averages.length)];
+				for (int i = 0; i < OBSERVED; i++) {
+					average[i] = (integral[i] + value[i] * (window_end - last_t)) / window;
+					integral[i] = 0;
+				}
+				last_t = window_end;
+				window_end += window;
+				steady = steady || (closed >= averages.length && steady());
+			}
+			for (int i = 0; i < OBSERVED; i++) integral[i] += value[i] * (t - last_t);
+			last_t = t;
+			observe(ctx);
+			return steady ? STOP_REASON.STEADY_STATE : null;
+		}
+
+		/**
+		 * Reads the observed values of the current state
+		 */
+		private void observe(SimulationContext ctx) {
+			value[0] = ctx.bas_size();
+			value[1] = ctx.lps_size();
+			value[2] = ctx.bas_stats.mean(TraitStatistics.SURFACE);
+			value[3] = ctx.bas_stats.mean(TraitStatistics.ENZYMES);
+		}
+
+		/**
+		 * @return whether the averages of every observed value are within tolerance
+		 */
+		private boolean steady() {
+			for (int i = 0; i < OBSERVED; i++) {
+				double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY, magnitude = 0;
+				for (double[] average : averages) {
+					min = Math.min(min, average[i]);
+					max = Math.max(max, average[i]);
+					magnitude += Math.abs(average[i]) / averages.length;
+				}
+				if (!(max - min <= tolerance * magnitude)) return false;
+			}
+			return true;
+		}
+	}
+
+}
@@ -0,0 +1,26 @@
+package virus_Bacteria_Simulation;
+
+/**
+ * Condition that ends a run early, checked by the simulation between
+ * events (see StoppingCriteria)
+ * @author Parker, Huttner
+ *
+ */
+public interface StoppingCriterion {
+
+	/**
+	 * Why a run ended. STEP_MAX, EXTINCT, NO_EVENTS and TIME are checked by
+	 * the simulation loop itself, the others by criteria; LEVEL is a
+	 * splitting level reached (see Splitting). The reason code of a run is
+	 * the ordinal.
+	 */
+	enum STOP_REASON {STEP_MAX, EXTINCT, NO_EVENTS, TIME, WALL_CLOCK, INFECTED, STEADY_STATE, LEVEL};
+
+	/**
+	 * @param ctx - simulation, in its state at ctx.t
+	 * @param events - events since the last check
+	 * @return reason to stop now, null to go on
+	 */
+	public STOP_REASON check(SimulationContext ctx, long events);
+
+}
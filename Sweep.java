@@ -0,0 +1,413 @@
+package virus_Bacteria_Simulation;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Parameter sweep over the biological constants (see Biology) and the
+ * starting populations. Every (point, replicate) pair is a job; jobs run
+ * on a fixed pool with one thread per processor, and a point's summary
+ * (mean and standard deviation over its replicates of the final state) is
+ * appended to the output file as soon as its last replicate finishes.
+ *
+ * A spec file holds one entry per line, '#' starting a comment:
+ *
+ * 	design grid | lhs N (full factorial grid, or a Latin hypercube of N points)
+ * 	replicates R (1 if absent)
+ * 	name low high [levels] (one line per swept parameter: a Biology name,
+ * 		lp_start or ba_start; levels of a grid axis, 2 if absent)
+ *
+ * Sweeping an entry of sr_prob or enz_prob sets Biology.shares for every
+ * run, so the entries are the outcome probabilities they are named for;
+ * under the original thresholds they would have no effect.
+ *
+ * Replicate r of every point is seeded with the r-th nextLong of a
+ * RandomStream seeded with the base parameters' seed, as in Ensemble, so
+ * points are compared on common random numbers; the Latin hypercube is
+ * drawn from a stream split off after the seeds. A point's number, and so
+ * its line, depends only on the spec and the seed. Points already in the
+ * output file are skipped, so a sweep that was stopped can be run again
+ * to finish it. Jobs are handed to the pool point by point and only a few
+ * per thread ahead, so memory stays small however many points there are.
+ * @author Parker, Huttner
+ *
+ */
+public class Sweep {
+
+	/* Class Variables */
+	static final String[] RESULTS = {"t", "events", "bacteria", "phage", "infected",
+			"bas_avg_sr", "bas_avg_enz", "lps_avg_sr", "lps_avg_enz", "extinct"}; // final state of a replicate
+	static final int AHEAD = 4; // jobs queued per thread
+
+	/* Instance Variables */
+	private Parameters base; // parameters of every run, before the point is applied
+	private String[] names; // swept parameters
+	private double[][] points; // points[p][i] is the value of names[i] at point p
+	private int replicates;
+
+	/**
+	 * @param base - parameters shared by every run
+	 * @param names - swept parameters, Biology names, lp_start or ba_start
+	 * @param points - value of each swept parameter at each point
+	 * @param replicates - runs per point
+	 */
+	public Sweep(Parameters base, String[] names, double[][] points, int replicates) {
+		this.base = base.copy();
+		this.base.debug = false;
+		this.base.exportTo = null;
+		this.base.trace = null;
+		this.base.checkpoint = null;
+		this.names = names.clone();
+		this.replicates = Math.max(replicates, 1);
+		for (int i = 0; i < names.length; i++) {
+			set(this.base.copy(), names[i], 0); // fail early on unknown names
+			if (names[i].startsWith("sr_prob[") || names[i].startsWith("enz_prob[")) this.base.bio.shares = true;
+		}
+
+		/* counts are rounded here, so the output shows the values that run */
+		this.points = new double[points.length][];
+		for (int p = 0; p < points.length; p++) {
+			this.points[p] = points[p].clone();
+			for (int i = 0; i < names.length; i++) {
+				if (isCount(names[i])) this.points[p][i] = Math.round(points[p][i]);
+			}
+		}
+	}
+
+	/**
+	 * Reads a spec file as described above
+	 * @param spec - spec file
+	 * @param base - parameters shared by every run
+	 * @return sweep over the points of the spec
+	 */
+	public static Sweep read(File spec, Parameters base) throws IOException {
+		List<String> names = new ArrayList<String>();
+		List<double[]> ranges = new ArrayList<double[]>(); // {low, high, levels}
+		int samples = 0, replicates = 1;
+
+		BufferedReader br = new BufferedReader(new FileReader(spec));
+		try {
+			String line;
+			while ((line = br.readLine()) != null) {
+				int comment = line.indexOf('#');
+				if (comment >= 0) line = line.substring(0, comment);
+				line = line.trim();
+				if (line.length() == 0) continue;
+				String[] words = line.split("\\s+");
+				if (words[0].equalsIgnoreCase("design")) {
+					if (words[1].equalsIgnoreCase("lhs")) samples = Integer.parseInt(words[2]);
+					else if (!words[1].equalsIgnoreCase("grid")) throw new IOException("unknown design " + words[1]);
+				}
+				else if (words[0].equalsIgnoreCase("replicates")) replicates = Integer.parseInt(words[1]);
+				else if (words.length >= 3) {
+					names.add(words[0]);
+					ranges.add(new double[]{Double.parseDouble(words[1]), Double.parseDouble(words[2]),
+							words.length > 3 ? Integer.parseInt(words[3]) : 2});
+				}
+				else throw new IOException("cannot read sweep line: " + line);
+			}
+		}
+		finally {
+			br.close();
+		}
+
+		int n = names.size();
+		double[] low = new double[n], high = new double[n];
+		int[] levels = new int[n];
+		for (int i = 0; i < n; i++) {
+			low[i] = ranges.get(i)[0];
+			high[i] = ranges.get(i)[1];
+			levels[i] = (int) ranges.get(i)[2];
+		}
+		double[][] points;
+		if (samples > 0) {
+			RandomStream seeder = new RandomStream(base.seed);
+			for (int r = 0; r < replicates; r++) seeder.nextLong();
+			points = latinHypercube(low, high, samples, seeder.split());
+		}
+		else points = grid(low, high, levels);
+		return new Sweep(base, names.toArray(new String[n]), points, replicates);
+	}
+
+	/**
+	 * Full factorial grid, the first parameter varying slowest
+	 * @param low - lowest value of each parameter
+	 * @param high - highest value of each parameter
+	 * @param levels - evenly spaced values of each parameter, low only if 1
+	 * @return every combination of the values
+	 */
+	public static double[][] grid(double[] low, double[] high, int[] levels) {
+		int count = 1;
+		for (int i = 0; i < levels.length; i++) count *= Math.max(levels[i], 1);
+		double[][] points = new double[count][levels.length];
+		for (int p = 0; p < count; p++) {
+			int rest = p;
+			for (int i = levels.length - 1; i >= 0; i--) {
+				int k = Math.max(levels[i], 1);
+				int level = rest % k;
+				rest /= k;
+				points[p][i] = k == 1 ? low[i] : low[i] + (high[i] - low[i]) * level / (k - 1);
+			}
+		}
+		return points;
+	}
+
+	/**
+	 * Latin hypercube: each parameter's range is cut into n equal strata
+	 * and every stratum holds exactly one point, at a uniform position
+	 * within it; strata are matched across parameters by random permutations
+	 * @param low - lowest value of each parameter
+	 * @param high - highest value of each parameter
+	 * @param n - number of points
+	 * @param rand - random number generator
+	 * @return n points
+	 */
+	public static double[][] latinHypercube(double[] low, double[] high, int n, Random rand) {
+		double[][] points = new double[n][low.length];
+		int[] strata = new int[n];
+		for (int i = 0; i < low.length; i++) {
+			for (int p = 0; p < n; p++) strata[p] = p;
+			for (int p = n - 1; p > 0; p--) { // Fisher-Yates shuffle
+				int q = rand.nextInt(p + 1);
+				int swap = strata[p];
+				strata[p] = strata[q];
+				strata[q] = swap;
+			}
+			for (int p = 0; p < n; p++) {
+				points[p][i] = low[i] + (high[i] - low[i]) * (strata[p] + rand.nextDouble()) / n;
+			}
+		}
+		return points;
+	}
+
+	/**
+	 * Sets a swept parameter
+	 * @param params - parameters to change
+	 * @param name - a Biology name, lp_start or ba_start
+	 * @param value - new value, rounded for counts
+	 */
+	static void set(Parameters params, String name, double value) {
+		if (name.equals("lp_start")) params.lp_start = (int) Math.round(value);
+		else if (name.equals("ba_start")) params.ba_start = (int) Math.round(value);
+		else params.bio.set(name, value);
+	}
+
+	/**
+	 * @return true for the swept parameters that are whole numbers
+	 */
+	static boolean isCount(String name) {
+		return name.equals("lp_start") || name.equals("ba_start") || name.equals("progeny");
+	}
+
+	/**
+	 * @return number of points
+	 */
+	public int points() {
+		return points.length;
+	}
+
+	/**
+	 * Runs the points not yet in the output file and appends their summaries
+	 * @param output - tab separated summaries, one line per point, created
+	 * with a header if it does not exist
+	 * @param threads - worker threads
+	 * @return number of points run
+	 */
+	public int run(File output, int threads) throws IOException {
+		Set<Integer> done = finished(output);
+		boolean header = !output.exists() || output.length() == 0;
+		PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(output, true), StandardCharsets.UTF_8));
+		if (header) out.println(header());
+
+		long[] seeds = new long[replicates];
+		RandomStream seeder = new RandomStream(base.seed);
+		for (int r = 0; r < replicates; r++) seeds[r] = seeder.nextLong();
+
+		List<Integer> todo = new ArrayList<Integer>();
+		for (int p = 0; p < points.length; p++) if (!done.contains(p)) todo.add(p);
+		long jobs = (long) todo.size() * replicates;
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		CompletionService<double[]> completed = new ExecutorCompletionService<double[]>(pool);
+		Map<Integer, Summary> pending = new HashMap<Integer, Summary>();
+		try {
+			long submitted = 0, received = 0;
+			while (received < jobs) {
+				while (submitted < jobs && submitted - received < (long) AHEAD * threads) {
+					int point = todo.get((int) (submitted / replicates));
+					completed.submit(new Job(point, seeds[(int) (submitted % replicates)]));
+					submitted++;
+				}
+				double[] result = completed.take().get();
+				received++;
+				int point = (int) result[RESULTS.length];
+				Summary summary = pending.get(point);
+				if (summary == null) pending.put(point, summary = new Summary());
+				summary.add(result);
+				if (summary.count == replicates) {
+					pending.remove(point);
+					out.println(line(point, summary));
+					out.flush();
+					if (out.checkError()) throw new IOException("cannot write " + output);
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("sweep interrupted", e);
+		}
+		catch (ExecutionException e) {
+			throw new IllegalStateException("sweep run failed", e.getCause());
+		}
+		finally {
+			pool.shutdownNow();
+			out.close();
+		}
+		return todo.size();
+	}
+
+	/**
+	 * Runs a sweep
+	 * @param args - spec file, then the output file, then optionally the
+	 * number of threads (all processors if absent); the base parameters
+	 * are read as described in Sim.getInfo
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("usage: Sweep <spec file> <output file> [threads]");
+			System.exit(2);
+		}
+		Parameters params = Sim.getInfo();
+		Sweep sweep = read(new File(args[0]), params);
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+		System.out.println("Seed: " + params.seed + ", " + sweep.points() + " points x " + sweep.replicates + " replicates");
+		long start = System.currentTimeMillis();
+		int run = sweep.run(new File(args[1]), threads);
+		System.out.println(run + " points run in " + (System.currentTimeMillis() - start) / 1000d + " s");
+	}
+
+	private String header() {
+		StringBuilder sb = new StringBuilder("point");
+		for (int i = 0; i < names.length; i++) sb.append('\t').append(names[i]);
+		sb.append("\treplicates");
+		for (int k = 0; k < RESULTS.length; k++) sb.append('\t').append(RESULTS[k]).append("_mean\t").append(RESULTS[k]).append("_sd");
+		return sb.toString();
+	}
+
+	private String line(int point, Summary summary) {
+		StringBuilder sb = new StringBuilder(String.valueOf(point));
+		for (int i = 0; i < names.length; i++) sb.append('\t').append(points[point][i]);
+		sb.append('\t').append(summary.count);
+		for (int k = 0; k < RESULTS.length; k++) sb.append('\t').append(summary.mean(k)).append('\t').append(Math.sqrt(summary.variance(k)));
+		return sb.toString();
+	}
+
+	/**
+	 * Reads the points already in an output file, and cuts off a last line
+	 * left incomplete by a sweep that was stopped while writing it
+	 * @return numbers of the points in the file
+	 * @throws IOException if the file holds another sweep's results
+	 */
+	private Set<Integer> finished(File output) throws IOException {
+		Set<Integer> done = new HashSet<Integer>();
+		if (!output.exists() || output.length() == 0) return done;
+		String text = new String(Files.readAllBytes(output.toPath()), StandardCharsets.UTF_8);
+		String header = header();
+		if (!text.startsWith(header + "\n") && !text.startsWith(header + "\r\n")) {
+			throw new IOException(output + " holds the results of another sweep");
+		}
+		int columns = header.split("\t").length;
+		int start = text.indexOf('\n') + 1, end;
+		while ((end = text.indexOf('\n', start)) >= 0) {
+			String[] fields = text.substring(start, end).trim().split("\t");
+			if (fields.length == columns) done.add(Integer.valueOf(fields[0]));
+			start = end + 1;
+		}
+		if (start < text.length()) {
+			RandomAccessFile raf = new RandomAccessFile(output, "rw");
+			try {
+				raf.setLength(text.substring(0, start).getBytes(StandardCharsets.UTF_8).length);
+			}
+			finally {
+				raf.close();
+			}
+		}
+		return done;
+	}
+
+	/**
+	 * One replicate of one point
+	 */
+	private class Job implements Callable<double[]> {
+
+		private int point;
+		private long seed;
+
+		Job(int point, long seed) {
+			this.point = point;
+			this.seed = seed;
+		}
+
+		/**
+		 * @return final state in RESULTS order, followed by the point number
+		 */
+		public double[] call() {
+			Parameters params = base.copy();
+			for (int i = 0; i < names.length; i++) set(params, names[i], points[point][i]);
+			SimulationContext ctx = new SimulationContext(params, seed);
+			ctx.run();
+
+			double bas = ctx.bas_size(), lps = ctx.lps_size();
+			double lps_sr = ctx.lps_stats.sum(TraitStatistics.SURFACE), lps_enz = ctx.lps_stats.sum(TraitStatistics.ENZYMES);
+			if (ctx.hybrid != null) {
+				lps_sr += ctx.hybrid.sumSurface();
+				lps_enz += ctx.hybrid.sumEnzymes();
+			}
+			return new double[]{ctx.t, ctx.events, bas, lps, ctx.bas_infected,
+					ctx.bas_stats.mean(TraitStatistics.SURFACE), ctx.bas_stats.mean(TraitStatistics.ENZYMES),
+					lps_sr / lps, lps_enz / lps, ctx.extinct ? 1 : 0, point};
+		}
+	}
+
+	/**
+	 * Running mean and variance of the results of a point, a cell per
+	 * result. A replicate whose result is NaN (trait means of an extinct
+	 * population) is left out of that result's mean.
+	 */
+	private static class Summary extends Moments {
+
+		private int count; // replicates added
+
+		Summary() {
+			super(RESULTS.length);
+		}
+
+		void add(double[] result) {
+			count++;
+			for (int k = 0; k < RESULTS.length; k++) add(k, result[k]);
+		}
+	}
+
+}
@@ -0,0 +1,217 @@
+package virus_Bacteria_Simulation;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Mergeable quantile sketch (Dunning's merging t-digest). Values are
+ * collected in a buffer and periodically merged into a sorted list of
+ * centroids (mean, weight). Under the arcsine scale function a centroid
+ * at quantile q may hold about sqrt(q (1 - q)) / compression of the total
+ * weight, so the tails stay accurate while the size stays below about
+ * pi / 2 * compression centroids however many values are added. Two
+ * digests merge by merging their centroid lists the same way, so partial
+ * digests from threads or files combine into the digest of all values.
+ * @author Parker, Huttner
+ *
+ */
+public class TDigest {
+
+	/* Class Variables */
+	static final double COMPRESSION = 100; // default compression
+
+	/* Instance Variables */
+	private double compression;
+	private double[] mean = new double[0]; // centroid means, ascending
+	private double[] weight = new double[0]; // centroid weights
+	private int centroids; // centroids in use
+	private double total; // weight of the centroids
+	private double[] buffer = new double[0]; // values not yet merged
+	private int buffered; // values in buffer
+	private double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+
+	/**
+	 * Creates a digest with COMPRESSION
+	 */
+	public TDigest() {
+		this(COMPRESSION);
+	}
+
+	/**
+	 * @param compression - larger keeps more centroids and gives more exact
+	 * quantiles
+	 */
+	public TDigest(double compression) {
+		this.compression = compression;
+	}
+
+	/**
+	 * Adds a value; NaN is ignored
+	 * @param x - value
+	 */
+	public void add(double x) {
+		if (Double.isNaN(x)) return;
+		if (buffered == buffer.length) {
+			if (buffered >= compression) compress();
+			else buffer = Arrays.copyOf(buffer, Math.max(8, Math.min(2 * buffer.length, (int) compression)));
+		}
+		buffer[buffered++] = x;
+		if (x < min) min = x;
+		if (x > max) max = x;
+	}
+
+	/**
+	 * Adds every value of another digest
+	 * @param other - digest, left unchanged apart from merging its buffer
+	 */
+	public void merge(TDigest other) {
+		other.compress();
+		if (other.centroids == 0) return;
+		compress();
+		double[] means = new double[centroids + other.centroids], weights = new double[means.length];
+		int i = 0, j = 0, k = 0;
+		while (i < centroids || j < other.centroids) {
+			if (j == other.centroids || (i < centroids && mean[i] <= other.mean[j])) {
+				means[k] = mean[i];
+				weights[k++] = weight[i++];
+			}
+			else {
+				means[k] = other.mean[j];
+				weights[k++] = other.weight[j++];
+			}
+		}
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+		collapse(means, weights, k, total + other.total);
+	}
+
+	/**
+	 * @return number of values added
+	 */
+	public long count() {
+		return Math.round(total) + buffered;
+	}
+
+	/**
+	 * @param q - quantile in [0, 1]
+	 * @return estimated q quantile, interpolated between centroids, NaN if empty
+	 */
+	public double quantile(double q) {
+		compress();
+		if (centroids == 0) return Double.NaN;
+		if (centroids == 1) return mean[0];
+		double index = Math.max(0, Math.min(1, q)) * total;
+
+		/* left of the first centroid's center */
+		if (index < weight[0] / 2) return min + (mean[0] - min) * index / (weight[0] / 2);
+
+		double cumulative = weight[0] / 2; // weight left of centroid i's center
+		for (int i = 0; i < centroids - 1; i++) {
+			double step = (weight[i] + weight[i + 1]) / 2;
+			if (cumulative + step > index) return mean[i] + (mean[i + 1] - mean[i]) * (index - cumulative) / step;
+			cumulative += step;
+		}
+
+		/* right of the last centroid's center */
+		int last = centroids - 1;
+		double half = weight[last] / 2;
+		return mean[last] + (max - mean[last]) * Math.min(1, (index - cumulative) / half);
+	}
+
+	/**
+	 * Writes the digest to a stream
+	 */
+	void write(DataOutputStream out) throws IOException {
+		compress();
+		out.writeDouble(compression);
+		out.writeDouble(min);
+		out.writeDouble(max);
+		out.writeInt(centroids);
+		for (int i = 0; i < centroids; i++) {
+			out.writeDouble(mean[i]);
+			out.writeDouble(weight[i]);
+		}
+	}
+
+	/**
+	 * @return digest written by write
+	 */
+	static TDigest read(DataInputStream in) throws IOException {
+		TDigest digest = new TDigest(in.readDouble());
+		digest.min = in.readDouble();
+		digest.max = in.readDouble();
+		digest.centroids = in.readInt();
+		digest.mean = new double[digest.centroids];
+		digest.weight = new double[digest.centroids];
+		for (int i = 0; i < digest.centroids; i++) {
+			digest.mean[i] = in.readDouble();
+			digest.weight[i] = in.readDouble();
+			digest.total += digest.weight[i];
+		}
+		return digest;
+	}
+
+	/**
+	 * Merges the buffered values into the centroids
+	 */
+	private void compress() {
+		if (buffered == 0) return;
+		Arrays.sort(buffer, 0, buffered);
+		double[] means = new double[centroids + buffered], weights = new double[means.length];
+		int i = 0, j = 0, k = 0;
+		while (i < centroids || j < buffered) {
+			if (j == buffered || (i < centroids && mean[i] <= buffer[j])) {
+				means[k] = mean[i];
+				weights[k++] = weight[i++];
+			}
+			else {
+				means[k] = buffer[j++];
+				weights[k++] = 1;
+			}
+		}
+		double sum = total + buffered;
+		buffered = 0;
+		collapse(means, weights, k, sum);
+	}
+
+	/**
+	 * Replaces the centroids by a sorted list of (mean, weight), merging
+	 * neighbours as long as the merged centroid spans at most one unit of
+	 * the scale function k(q) = compression / (2 pi) * asin(2q - 1)
+	 */
+	private void collapse(double[] means, double[] weights, int n, double sum) {
+		int kept = 0;
+		double before = 0; // weight of the finished centroids
+		double limit = sum * limit(0);
+		for (int i = 1; i < n; i++) {
+			if (before + weights[kept] + weights[i] <= limit) {
+				double w = weights[kept] + weights[i];
+				means[kept] += (means[i] - means[kept]) * weights[i] / w;
+				weights[kept] = w;
+			}
+			else {
+				before += weights[kept];
+				limit = sum * limit(before / sum);
+				kept++;
+				means[kept] = means[i];
+				weights[kept] = weights[i];
+			}
+		}
+		centroids = n == 0 ? 0 : kept + 1;
+		mean = means;
+		weight = weights;
+		total = sum;
+	}
+
+	/**
+	 * @return largest quantile a centroid starting at quantile q may reach
+	 */
+	private double limit(double q) {
+		double k = compression / (2 * Math.PI) * Math.asin(2 * q - 1) + 1;
+		if (k >= compression / 4) return 1; // past the top of the scale
+		return (Math.sin(k * 2 * Math.PI / compression) + 1) / 2;
+	}
+
+}
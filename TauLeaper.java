@@ -0,0 +1,184 @@
+package virus_Bacteria_Simulation;
+
+import virus_Bacteria_Simulation.Organism.EVENT_TYPE;
+
+/**
+ * Explicit tau-leaping over a CompactPopulation with the adaptive step size
+ * and critical reactions of Cao, Gillespie and Petzold (2006).
+ *
+ * Each leap draws a Poisson number of firings for every event type and
+ * applies them in bulk through the compact event methods, so mutations and
+ * lysis bursts behave as in the exact simulation. Event types whose
+ * population is smaller than CRITICAL fire at most once per leap. When the
+ * chosen leap would cover fewer than SSA_THRESHOLD expected events the
+ * solver takes SSA_STEPS exact steps instead.
+ * @author Parker, Huttner
+ *
+ */
+public class TauLeaper {
+
+	/* Class Variables */
+	static final double epsilon = 0.03; // bound on the relative change of any population in one leap
+	static final int CRITICAL = 10; // populations below this are only changed by single events
+	static final double SSA_THRESHOLD = 10; // leap only if tau covers this many expected events
+	static final int SSA_STEPS = 100; // exact steps taken when leaping is not worthwhile
+	static final EVENT_TYPE[] TYPES = EVENT_TYPE.values();
+
+	/* Instance Variables */
+	private SimulationContext ctx;
+	private CompactPopulation pop;
+	private CompactScheduler ssa; // exact fallback
+	private double[] propensity = new double[TYPES.length];
+	private boolean[] critical = new boolean[TYPES.length];
+	private long[] firings = new long[TYPES.length];
+
+	/**
+	 * @param ctx - simulation to advance
+	 * @param pop - compact population to advance
+	 * @param ssa - exact scheduler over the same population
+	 */
+	public TauLeaper(SimulationContext ctx, CompactPopulation pop, CompactScheduler ssa) {
+		this.ctx = ctx;
+		this.pop = pop;
+		this.ssa = ssa;
+	}
+
+	/**
+	 * Advances the simulation time by one leap, or by SSA_STEPS exact events
+	 * @return number of events fired, 0 if no event can fire
+	 */
+	public long leap() {
+
+		/* Propensities and critical event types */
+		double total = 0, total_critical = 0;
+		for (int j = 0; j < TYPES.length; j++) {
+			propensity[j] = ctx.bio.rate(TYPES[j]) * pop.count(TYPES[j]);
+			critical[j] = propensity[j] > 0 && pop.count(TYPES[j]) < CRITICAL;
+			total += propensity[j];
+			if (critical[j]) total_critical += propensity[j];
+		}
+		if (total <= 0) return 0;
+
+		/* Step size from the non-critical events */
+		double tau = selectTau();
+		if (tau < SSA_THRESHOLD / total) return exactSteps();
+
+		/* Time to the next critical event */
+		double tau_critical = Double.POSITIVE_INFINITY;
+		if (total_critical > 0) tau_critical = ctx.randy.nextExponential() / total_critical;
+
+		int fire_critical = -1;
+		if (tau_critical <= tau) {
+			tau = tau_critical;
+			fire_critical = chooseCritical(total_critical);
+		}
+
+		/* Draw firings, then apply them */
+		for (int j = 0; j < TYPES.length; j++) {
+			if (critical[j]) firings[j] = (j == fire_critical) ? 1 : 0;
+			else firings[j] = Distributions.poisson(ctx.randy, propensity[j] * tau);
+		}
+		long fired = 0;
+		for (int j = 0; j < TYPES.length; j++) fired += apply(TYPES[j], firings[j]);
+
+		ctx.t += tau;
+		return fired;
+	}
+
+	/**
+	 * Largest tau that keeps the expected change and standard deviation of
+	 * every population within epsilon of its size, using the mean
+	 * stoichiometry of each event type
+	 * @return leap size, infinite if no non-critical event can fire
+	 */
+	private double selectTau() {
+		double death = rate(EVENT_TYPE.DEATH), reproduce = rate(EVENT_TYPE.REPRODUCE);
+		double denature = rate(EVENT_TYPE.DENATURE), infect = rate(EVENT_TYPE.INFECT);
+		double lysis = rate(EVENT_TYPE.SWITCHPHASE), secrete = rate(EVENT_TYPE.SECRETE);
+		double burst = ctx.bio.progeny;
+		double infected = pop.bacteria > 0 ? (double) pop.prophage / pop.bacteria : 0; // prophage lost or gained with each bacterium
+
+		double tau = Double.POSITIVE_INFINITY;
+		tau = Math.min(tau, bound(pop.bacteria, reproduce - death - lysis, reproduce + death + lysis));
+		tau = Math.min(tau, bound(pop.free, burst * lysis + secrete - denature - infect,
+				burst * burst * lysis + secrete + denature + infect));
+		tau = Math.min(tau, bound(pop.prophage, infected * (reproduce - death) + infect - lysis,
+				infected * infected * (reproduce + death) + infect + lysis));
+		return tau;
+	}
+
+	/**
+	 * @return non-critical propensity of an event type
+	 */
+	private double rate(EVENT_TYPE type) {
+		return critical[type.ordinal()] ? 0 : propensity[type.ordinal()];
+	}
+
+	/**
+	 * @param x - population size
+	 * @param mean - expected change per unit time
+	 * @param variance - variance of the change per unit time
+	 * @return tau bound for this population
+	 */
+	private static double bound(int x, double mean, double variance) {
+		double allowed = Math.max(epsilon * x, 1);
+		double tau = Double.POSITIVE_INFINITY;
+		if (mean != 0) tau = allowed / Math.abs(mean);
+		if (variance > 0) tau = Math.min(tau, allowed * allowed / variance);
+		return tau;
+	}
+
+	/**
+	 * @param total_critical - summed propensity of critical event types
+	 * @return critical event type chosen in proportion to its propensity
+	 */
+	private int chooseCritical(double total_critical) {
+		double target = ctx.randy.nextDouble() * total_critical;
+		int last = -1;
+		for (int j = 0; j < TYPES.length; j++) {
+			if (!critical[j]) continue;
+			last = j;
+			target -= propensity[j];
+			if (target < 0) return j;
+		}
+		return last;
+	}
+
+	/**
+	 * Fires an event type on uniformly chosen organisms, stopping early if
+	 * the population runs out
+	 * @return number of events fired
+	 */
+	private long apply(EVENT_TYPE type, long count) {
+		long fired = 0;
+		for (; fired < count; fired++) {
+			int size = pop.count(type);
+			if (size == 0 || extinct()) break;
+			pop.execute(type, ctx.randy.nextInt(size));
+		}
+		return fired;
+	}
+
+	/**
+	 * Takes exact steps while populations are too small to leap
+	 * @return number of events fired
+	 */
+	private long exactSteps() {
+		long fired = 0;
+		for (; fired < SSA_STEPS && !extinct(); fired++) {
+			Event evt = ssa.next();
+			if (evt == null) break;
+			ctx.t = evt.time;
+			evt.org.execute(evt.type);
+		}
+		return fired;
+	}
+
+	/**
+	 * @return true once bacteria or phage are gone and the run stops
+	 */
+	private boolean extinct() {
+		return pop.bacteria == 0 || pop.free + pop.prophage == 0;
+	}
+
+}
@@ -0,0 +1,202 @@
+package virus_Bacteria_Simulation;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import virus_Bacteria_Simulation.Organism.EVENT_TYPE;
+
+/**
+ * Rebuilds the populations recorded in an EventTrace file at any event
+ * index by applying the recorded changes, without running the model.
+ * Seeking forward continues from the current position; seeking backward
+ * starts again from the beginning of the file.
+ *
+ * Run as a program it prints the state after the given event index.
+ * @author Parker, Huttner
+ *
+ */
+public class TraceReplayer {
+
+	/* Instance Variables */
+	Map<Long, double[]> bacteria = new HashMap<Long, double[]>(); // id -> {prob_surface, prob_enzymes}
+	Map<Long, double[]> free = new HashMap<Long, double[]>(); // id -> {prob_surface, prob_enzymes}
+	Map<Long, double[]> prophage = new HashMap<Long, double[]>(); // id -> {prob_surface, prob_enzymes, host id}
+	long events; // events applied so far
+	double time; // time of the last event applied
+	EVENT_TYPE type; // type of the last event applied
+	long org = -1; // organism of the last event applied, -1 if none
+	long partner = -1; // partner chosen by the last event applied, -1 if none
+	private File file;
+	private DataInputStream in;
+	private int lookahead; // header byte of the next record, -1 at the end of the file
+	private long previous_time; // bits of the last event time read
+
+	/**
+	 * Opens a trace and applies the starting populations
+	 * @param file - trace file
+	 */
+	public TraceReplayer(File file) throws IOException {
+		this.file = file;
+		open();
+	}
+
+	/**
+	 * Rebuilds the populations as they were after the given number of events,
+	 * or after the last event if the trace is shorter
+	 * @param index - number of events
+	 * @return true if the trace has that many events
+	 */
+	public boolean seek(long index) throws IOException {
+		if (index < events) {
+			close();
+			open();
+		}
+		while (events < index) {
+			if (lookahead < 0) return false;
+			step();
+		}
+		return true;
+	}
+
+	/**
+	 * @return number of bacteria with a prophage
+	 */
+	public int infected() {
+		return prophage.size();
+	}
+
+	/**
+	 * @param population - map of organisms
+	 * @param trait - 0 for prob_surface, 1 for prob_enzymes
+	 * @return sum of the trait over the population
+	 */
+	public static double sum(Map<Long, double[]> population, int trait) {
+		double sum = 0;
+		for (double[] traits : population.values()) sum += traits[trait];
+		return sum;
+	}
+
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * Prints the populations after an event index
+	 * @param args - trace file, event index
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("usage: TraceReplayer <trace file> <event index>");
+			System.exit(1);
+		}
+		TraceReplayer replayer = new TraceReplayer(new File(args[0]));
+		if (!replayer.seek(Long.parseLong(args[1]))) System.out.println("trace ends after " + replayer.events + " events");
+		int phage = replayer.free.size() + replayer.prophage.size();
+		System.out.println("event " + replayer.events + " t " + replayer.time + " " + replayer.type
+				+ " org " + replayer.org + " partner " + replayer.partner);
+		System.out.println("bacteria " + replayer.bacteria.size() + " free " + replayer.free.size()
+				+ " prophage " + replayer.prophage.size());
+		System.out.println("bas_avg_sr " + sum(replayer.bacteria, 0) / replayer.bacteria.size()
+				+ " bas_avg_enz " + sum(replayer.bacteria, 1) / replayer.bacteria.size());
+		System.out.println("lps_avg_sr " + (sum(replayer.free, 0) + sum(replayer.prophage, 0)) / phage
+				+ " lps_avg_enz " + (sum(replayer.free, 1) + sum(replayer.prophage, 1)) / phage);
+		replayer.close();
+	}
+
+	/**
+	 * Opens the file at its start and applies the records before the first event
+	 */
+	private void open() throws IOException {
+		in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+		if (in.readInt() != EventTrace.MAGIC) throw new IOException(file + " is not an event trace");
+		short version = in.readShort();
+		if (version != EventTrace.VERSION) throw new IOException("unsupported event trace version " + version);
+		bacteria.clear();
+		free.clear();
+		prophage.clear();
+		events = 0;
+		time = 0;
+		type = null;
+		org = partner = -1;
+		previous_time = 0;
+		lookahead = in.read();
+		applyChanges();
+	}
+
+	/**
+	 * Applies the next event record and its changes
+	 */
+	private void step() throws IOException {
+		int header = lookahead;
+		long bits = readVarint() ^ previous_time;
+		previous_time = bits;
+		time = Double.longBitsToDouble(bits);
+		type = EventTrace.TYPES[header >>> 3];
+		org = readVarint() - 1;
+		partner = -1;
+		events++;
+		lookahead = in.read();
+		applyChanges();
+	}
+
+	/**
+	 * Applies records up to the next event record or the end of the file
+	 */
+	private void applyChanges() throws IOException {
+		while (lookahead >= 0 && (lookahead & 7) != EventTrace.EVENT) {
+			int kind = lookahead & 7;
+			int population = lookahead >>> 3;
+			long id = readVarint() - 1;
+			switch (kind) {
+				case EventTrace.PARTNER:
+					partner = id;
+					break;
+				case EventTrace.ADD:
+					long host = readVarint() - 1;
+					double sr = in.readDouble(), enz = in.readDouble();
+					if (population == EventTrace.PROPHAGE) population(population).put(id, new double[] {sr, enz, host});
+					else population(population).put(id, new double[] {sr, enz});
+					break;
+				case EventTrace.REMOVE:
+					population(population).remove(id);
+					break;
+				case EventTrace.TRAITS:
+					double[] traits = bacteria.get(id);
+					double new_sr = in.readDouble(), new_enz = in.readDouble();
+					if (traits != null) {
+						traits[0] = new_sr;
+						traits[1] = new_enz;
+					}
+					break;
+				default:
+					throw new IOException("corrupt event trace record " + kind);
+			}
+			lookahead = in.read();
+		}
+	}
+
+	private Map<Long, double[]> population(int code) {
+		switch (code) {
+			case EventTrace.BACTERIA: return bacteria;
+			case EventTrace.FREE: return free;
+			default: return prophage;
+		}
+	}
+
+	private long readVarint() throws IOException {
+		long value = 0;
+		for (int shift = 0; ; shift += 7) {
+			int b = in.read();
+			if (b < 0) throw new EOFException("truncated event trace");
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) return value;
+		}
+	}
+
+}
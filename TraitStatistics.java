@@ -0,0 +1,182 @@
+package virus_Bacteria_Simulation;
+
+/**
+ * Running statistics of the two resistance traits (prob_surface,
+ * prob_enzymes) over a population, updated in O(1) whenever an organism
+ * enters, leaves or changes its traits: count, sum, mean, variance and a
+ * fixed bin histogram over [0, 1].
+ *
+ * Sums of the traits and of their squares are kept shifted by SHIFT, the
+ * middle of the trait range, and accumulated with Neumaier's compensated
+ * summation, so billions of additions and removals do not drift and the
+ * variance does not suffer from cancellation. Traits outside [0, 1] are
+ * counted in the first or last histogram bin.
+ * @author Parker, Huttner
+ *
+ */
+public class TraitStatistics {
+
+	/* Class Variables */
+	static final int SURFACE = 0, ENZYMES = 1; // trait indices
+	static final int BINS = 20; // default histogram bins
+	private static final double SHIFT = 0.5;
+
+	/* Instance Variables */
+	private long count; // number of organisms
+	private double[] sum = new double[2]; // compensated sum of trait - SHIFT
+	private double[] sum_c = new double[2]; // compensation of sum
+	private double[] squares = new double[2]; // compensated sum of (trait - SHIFT)^2
+	private double[] squares_c = new double[2]; // compensation of squares
+	private long[][] histogram;
+
+	/**
+	 * Creates statistics with a BINS bin histogram
+	 */
+	public TraitStatistics() {
+		this(BINS);
+	}
+
+	/**
+	 * @param bins - histogram bins over [0, 1]
+	 */
+	public TraitStatistics(int bins) {
+		histogram = new long[2][bins];
+	}
+
+	/**
+	 * Adds an organism
+	 * @param sr - prob_surface
+	 * @param enz - prob_enzymes
+	 */
+	public void add(double sr, double enz) {
+		add(sr, enz, 1);
+	}
+
+	/**
+	 * Adds n organisms with the same traits
+	 * @param sr - prob_surface
+	 * @param enz - prob_enzymes
+	 * @param n - number of organisms, negative to remove
+	 */
+	public void add(double sr, double enz, long n) {
+		count += n;
+		accumulate(SURFACE, sr, n);
+		accumulate(ENZYMES, enz, n);
+	}
+
+	/**
+	 * Removes an organism
+	 * @param sr - prob_surface
+	 * @param enz - prob_enzymes
+	 */
+	public void remove(double sr, double enz) {
+		add(sr, enz, -1);
+	}
+
+	/**
+	 * Replaces the traits of an organism
+	 * @param old_sr - previous prob_surface
+	 * @param old_enz - previous prob_enzymes
+	 * @param sr - new prob_surface
+	 * @param enz - new prob_enzymes
+	 */
+	public void change(double old_sr, double old_enz, double sr, double enz) {
+		accumulate(SURFACE, old_sr, -1);
+		accumulate(ENZYMES, old_enz, -1);
+		accumulate(SURFACE, sr, 1);
+		accumulate(ENZYMES, enz, 1);
+	}
+
+	/**
+	 * @return number of organisms
+	 */
+	public long count() {
+		return count;
+	}
+
+	/**
+	 * @param trait - SURFACE or ENZYMES
+	 * @return sum of the trait over the population
+	 */
+	public double sum(int trait) {
+		return sum[trait] + sum_c[trait] + SHIFT * count;
+	}
+
+	/**
+	 * @param trait - SURFACE or ENZYMES
+	 * @return mean of the trait, NaN for an empty population
+	 */
+	public double mean(int trait) {
+		return (sum[trait] + sum_c[trait]) / count + SHIFT;
+	}
+
+	/**
+	 * @param trait - SURFACE or ENZYMES
+	 * @return sample variance of the trait, NaN for fewer than two organisms
+	 */
+	public double variance(int trait) {
+		if (count < 2) return Double.NaN;
+		double s = sum[trait] + sum_c[trait];
+		double variance = (squares[trait] + squares_c[trait] - s * s / count) / (count - 1);
+		return Math.max(variance, 0);
+	}
+
+	/**
+	 * @param trait - SURFACE or ENZYMES
+	 * @return organisms per histogram bin, bin i covering [i/bins, (i+1)/bins)
+	 */
+	public long[] histogram(int trait) {
+		return histogram[trait].clone();
+	}
+
+	/**
+	 * Writes the statistics to a snapshot
+	 */
+	void save(Snapshot out) {
+		out.putLong(count);
+		out.putDoubles(sum, 2);
+		out.putDoubles(sum_c, 2);
+		out.putDoubles(squares, 2);
+		out.putDoubles(squares_c, 2);
+		out.putLongs(histogram[SURFACE], histogram[SURFACE].length);
+		out.putLongs(histogram[ENZYMES], histogram[ENZYMES].length);
+	}
+
+	/**
+	 * Replaces the statistics with ones written by save
+	 */
+	void restore(Snapshot in) {
+		count = in.getLong();
+		sum = in.getDoubles(2);
+		sum_c = in.getDoubles(2);
+		squares = in.getDoubles(2);
+		squares_c = in.getDoubles(2);
+		histogram[SURFACE] = in.getLongs(0);
+		histogram[ENZYMES] = in.getLongs(0);
+	}
+
+	/**
+	 * Adds n times a trait value to the sums and histogram of a trait
+	 */
+	private void accumulate(int trait, double value, long n) {
+		double x = value - SHIFT;
+		double y = n * x;
+		double t = sum[trait] + y;
+		if (Math.abs(sum[trait]) >= Math.abs(y)) sum_c[trait] += (sum[trait] - t) + y;
+		else sum_c[trait] += (y - t) + sum[trait];
+		sum[trait] = t;
+
+		y = n * x * x;
+		t = squares[trait] + y;
+		if (Math.abs(squares[trait]) >= Math.abs(y)) squares_c[trait] += (squares[trait] - t) + y;
+		else squares_c[trait] += (y - t) + squares[trait];
+		squares[trait] = t;
+
+		long[] bins = histogram[trait];
+		int bin = (int) (value * bins.length);
+		if (bin < 0 || value != value) bin = 0;
+		else if (bin >= bins.length) bin = bins.length - 1;
+		bins[bin] += n;
+	}
+
+}
@@ -0,0 +1,181 @@
+package virus_Bacteria_Simulation;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads a trajectory file written by TrajectoryWriter. The file is memory
+ * mapped in windows and blocks are decoded straight from the mapping into
+ * reused column arrays, one block at a time.
+ *
+ * Run as a program it converts a trajectory file into the tab separated
+ * text files Sim.printData used to write, one file per series named
+ * prefix + series name + ".txt" with a "time \t value" line per sample.
+ * @author Parker, Huttner
+ *
+ */
+public class TrajectoryReader {
+
+	/* Class Variables */
+	static final long WINDOW = 1L << 28; // bytes mapped at a time
+
+	/* Instance Variables */
+	String[] names; // column names, time first
+	Map<String, String> params = new LinkedHashMap<String, String>(); // parameters of the run
+	private FileChannel channel;
+	private long size; // file length
+	private MappedByteBuffer window; // mapped part of the file
+	private long window_start; // file offset of the window
+	private long position; // file offset of the next block
+	private double[][] columns; // decoded block
+	private int rows; // rows in the decoded block
+
+	/**
+	 * Opens the file and reads its header
+	 * @param file - trajectory file
+	 */
+	public TrajectoryReader(File file) throws IOException {
+		channel = new RandomAccessFile(file, "r").getChannel();
+		size = channel.size();
+		map(0, (int) Math.min(size, WINDOW));
+
+		if (window.getInt() != TrajectoryWriter.MAGIC) throw new IOException(file + " is not a trajectory file");
+		short version = window.getShort();
+		if (version != TrajectoryWriter.VERSION) throw new IOException("unsupported trajectory version " + version);
+		names = new String[(int) getVarint()];
+		for (int c = 0; c < names.length; c++) names[c] = getString();
+		int count = (int) getVarint();
+		for (int i = 0; i < count; i++) params.put(getString(), getString());
+
+		position = window.position();
+		columns = new double[names.length][0];
+	}
+
+	/**
+	 * Decodes the next block
+	 * @return false if there are no more blocks
+	 */
+	public boolean next() throws IOException {
+		if (position + 4 > size) return false;
+		map(position, 4);
+		int length = window.getInt((int) (position - window_start));
+		map(position, 4 + length);
+		window.position((int) (position - window_start) + 4);
+
+		rows = (int) getVarint();
+		for (int c = 0; c < columns.length; c++) {
+			if (columns[c].length < rows) columns[c] = new double[rows];
+			double[] column = columns[c];
+			byte encoding = window.get();
+			long previous = 0;
+			for (int r = 0; r < rows; r++) {
+				long raw = getVarint();
+				if (encoding == TrajectoryWriter.INTEGER) {
+					previous += (raw >>> 1) ^ -(raw & 1); // undo zigzag
+					column[r] = previous;
+				}
+				else {
+					previous ^= raw;
+					column[r] = Double.longBitsToDouble(previous);
+				}
+			}
+		}
+		position += 4 + length;
+		return true;
+	}
+
+	/**
+	 * @return number of rows in the current block
+	 */
+	public int rows() {
+		return rows;
+	}
+
+	/**
+	 * @param c - column index, as in names
+	 * @return values of the column in the current block, valid up to rows()
+	 */
+	public double[] column(int c) {
+		return columns[c];
+	}
+
+	/**
+	 * @return file offset of the next block
+	 */
+	public long offset() {
+		return position;
+	}
+
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Converts the remaining blocks to one tab separated file per series
+	 * @param prefix - prefix of the output file names
+	 */
+	public void toText(String prefix) throws IOException {
+		BufferedWriter[] out = new BufferedWriter[names.length];
+		for (int c = 1; c < names.length; c++) out[c] = new BufferedWriter(new FileWriter(prefix + names[c] + ".txt"));
+		try {
+			while (next()) {
+				for (int c = 1; c < names.length; c++) {
+					for (int r = 0; r < rows; r++) out[c].write(columns[0][r] + "\t" + columns[c][r] + "\n");
+				}
+			}
+		}
+		finally {
+			for (int c = 1; c < names.length; c++) out[c].close();
+		}
+	}
+
+	/**
+	 * Converts a trajectory file to tab separated text files
+	 * @param args - trajectory file, output file prefix
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("usage: TrajectoryReader <trajectory file> <output prefix>");
+			System.exit(1);
+		}
+		TrajectoryReader reader = new TrajectoryReader(new File(args[0]));
+		reader.toText(args[1]);
+		reader.close();
+	}
+
+	/**
+	 * Maps a window holding the given range of the file, if the current
+	 * window does not
+	 */
+	private void map(long offset, int length) throws IOException {
+		if (window != null && offset >= window_start && offset + length <= window_start + window.capacity()) return;
+		long bytes = Math.min(Math.max(WINDOW, length), size - offset);
+		if (bytes < length) throw new IOException("truncated trajectory block at " + offset);
+		window = channel.map(FileChannel.MapMode.READ_ONLY, offset, bytes);
+		window_start = offset;
+	}
+
+	private long getVarint() {
+		long value = 0;
+		for (int shift = 0; ; shift += 7) {
+			byte b = window.get();
+			value |= (long) (b & 0x7F) << shift;
+			if (b >= 0) return value;
+		}
+	}
+
+	private String getString() {
+		byte[] bytes = new byte[(int) getVarint()];
+		window.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+}
@@ -0,0 +1,25 @@
+package virus_Bacteria_Simulation;
+
+import java.io.IOException;
+
+/**
+ * General interface for consumers of the samples taken by a Recorder
+ * @author Parker, Huttner
+ *
+ */
+public interface TrajectorySink {
+
+	/**
+	 * Consumes a block of samples. The arrays are reused by the recorder
+	 * once this returns, so sinks must copy what they keep.
+	 * @param columns - one array per Recorder.COLUMNS entry
+	 * @param rows - number of valid samples at the start of each array
+	 */
+	public void write(double[][] columns, int rows) throws IOException;
+
+	/**
+	 * Releases any resources held by the sink
+	 */
+	public void close() throws IOException;
+
+}
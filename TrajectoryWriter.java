@@ -0,0 +1,186 @@
+package virus_Bacteria_Simulation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes recorded samples to a binary columnar trajectory file through a
+ * FileChannel while the simulation runs. The format is
+ *
+ * 	header: magic "PHTR", version (short), column count and names, parameter
+ * 		count and key / value pairs
+ * 	blocks: byte length (int), row count, then each column as an encoding
+ * 		byte followed by one varint per row
+ *
+ * Strings are a varint byte length and UTF-8 bytes. A column whose values
+ * in the block are all whole numbers is stored as zigzag varint deltas
+ * (INTEGER), any other column as varints of each double's bits XORed with
+ * the previous value's bits (XOR), which is short for slowly changing
+ * values. Blocks are self-contained, so a reader can start at any block.
+ * @author Parker, Huttner
+ *
+ */
+public class TrajectoryWriter implements TrajectorySink {
+
+	/* Class Variables */
+	static final int MAGIC = 0x50485452; // "PHTR"
+	static final short VERSION = 1;
+	static final byte XOR = 0, INTEGER = 1; // column encodings
+
+	/* Instance Variables */
+	private FileChannel channel;
+	private ByteBuffer buffer = ByteBuffer.allocate(1 << 16); // encoded block
+
+	/**
+	 * Creates the file and writes its header
+	 * @param file - file to write, replaced if it exists
+	 * @param ctx - simulation whose parameters go in the header
+	 */
+	public TrajectoryWriter(File file, SimulationContext ctx) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.setLength(0);
+		channel = raf.getChannel();
+
+		Map<String, String> params = parameters(ctx);
+		buffer.putInt(MAGIC);
+		buffer.putShort(VERSION);
+		putVarint(Recorder.COLUMNS.length);
+		for (String name : Recorder.COLUMNS) putString(name);
+		putVarint(params.size());
+		for (Map.Entry<String, String> entry : params.entrySet()) {
+			putString(entry.getKey());
+			putString(entry.getValue());
+		}
+		drain();
+	}
+
+	/**
+	 * Reopens a trajectory file to continue a resumed run, keeping its
+	 * first samples and dropping any written after the snapshot was taken
+	 * @param file - trajectory file of the run before it stopped
+	 * @param samples - samples the run had written when the snapshot was taken
+	 */
+	public TrajectoryWriter(File file, long samples) throws IOException {
+		TrajectoryReader reader = new TrajectoryReader(file);
+		long kept = 0;
+		try {
+			while (kept < samples && reader.next()) kept += reader.rows();
+		}
+		finally {
+			reader.close();
+		}
+		if (kept != samples)
+			throw new IOException(file + " holds " + kept + " samples up to a block boundary, snapshot expects " + samples);
+
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.setLength(reader.offset());
+		channel = raf.getChannel();
+		channel.position(reader.offset());
+	}
+
+	/**
+	 * Encodes the samples as one block and writes it
+	 */
+	public void write(double[][] columns, int rows) throws IOException {
+		reserve(4 + 10 + columns.length * (1 + 10L * rows));
+		buffer.putInt(0); // length, filled in below
+		putVarint(rows);
+		for (double[] column : columns) {
+			if (integral(column, rows)) {
+				buffer.put(INTEGER);
+				long previous = 0;
+				for (int r = 0; r < rows; r++) {
+					long value = (long) column[r];
+					long delta = value - previous;
+					putVarint((delta << 1) ^ (delta >> 63)); // zigzag
+					previous = value;
+				}
+			}
+			else {
+				buffer.put(XOR);
+				long previous = 0;
+				for (int r = 0; r < rows; r++) {
+					long bits = Double.doubleToLongBits(column[r]);
+					putVarint(bits ^ previous);
+					previous = bits;
+				}
+			}
+		}
+		buffer.putInt(0, buffer.position() - 4);
+		drain();
+	}
+
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * @return parameters of the run, as written in the header
+	 */
+	static Map<String, String> parameters(SimulationContext ctx) {
+		Parameters params = ctx.params;
+		Map<String, String> map = new LinkedHashMap<String, String>();
+		map.put("lp_start", String.valueOf(params.lp_start));
+		map.put("ba_start", String.valueOf(params.ba_start));
+		map.put("step_max", String.valueOf(params.step_max));
+		map.put("method", String.valueOf(params.method));
+		map.put("bin_width", String.valueOf(params.bin_width));
+		map.put("seed", String.valueOf(ctx.seed));
+		map.put("record_interval", String.valueOf(params.record_interval));
+		map.put("record_every", String.valueOf(params.record_every));
+		return map;
+	}
+
+	/**
+	 * @return true if every value is a whole number that fits a long
+	 */
+	private static boolean integral(double[] column, int rows) {
+		for (int r = 0; r < rows; r++) {
+			double value = column[r];
+			if (value != Math.rint(value) || Math.abs(value) > 1e15) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Makes room for at least the given number of bytes in the buffer
+	 */
+	private void reserve(long bytes) {
+		if (buffer.remaining() >= bytes) return;
+		ByteBuffer bigger = ByteBuffer.allocate((int) Math.max(2L * buffer.capacity(), buffer.position() + bytes));
+		buffer.flip();
+		bigger.put(buffer);
+		buffer = bigger;
+	}
+
+	/**
+	 * Writes the buffer to the channel and empties it
+	 */
+	private void drain() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) channel.write(buffer);
+		buffer.clear();
+	}
+
+	private void putVarint(long value) {
+		while ((value & ~0x7FL) != 0) {
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	private void putString(String s) {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		reserve(10 + bytes.length);
+		putVarint(bytes.length);
+		buffer.put(bytes);
+	}
+
+}
@@ -0,0 +1,361 @@
+package virus_Bacteria_Simulation;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Runs an aggregated ensemble (see Ensemble.aggregate) over several worker
+ * processes that share nothing but a directory, on one machine or on nodes
+ * with a shared filesystem. The coordinator splits the replicates into job
+ * files; a worker claims a job by renaming it, runs its replicates and
+ * writes their EnsembleStatistics; the coordinator merges the statistics
+ * of all jobs into the output file.
+ *
+ * The queue directory holds
+ *
+ * 	plan (replicates, grid points, lease seconds, jobs)
+ * 	parameters (copy of the parameter file)
+ * 	pending/job-N (seeds of the job's replicates, one per line)
+ * 	running/job-N.WORKER (a claimed job, touched while the worker is alive)
+ * 	done/job-N.stats (statistics of the job's replicates)
+ *
+ * A claim is an atomic rename from pending to running, so exactly one
+ * worker gets a job. A worker touches its claimed file every quarter lease;
+ * the coordinator moves a running file back to pending when it has not
+ * seen it change for a lease, by its own clock, so clocks of other nodes
+ * do not matter. A job run twice (a slow worker whose job was re-leased)
+ * writes the same statistics twice, since its seeds are in the job file.
+ *
+ * Seeds are drawn as in Ensemble, so the merged statistics are those of
+ * Ensemble.aggregate with the same seed and number of replicates, up to
+ * rounding of the merge order. Running the coordinator again on an
+ * existing directory continues its plan.
+ * @author Parker, Huttner
+ *
+ */
+public class WorkQueue {
+
+	/* Class Variables */
+	static final int JOBS = 256; // jobs a plan is split into at most
+	static final double LEASE = 120; // default seconds a claim lasts without a touch
+	static final long POLL_MS = 1000; // milliseconds between looks at the directory
+
+	/* Instance Variables */
+	private File dir;
+	private File pending, running, done;
+	private int replicates; // replicates of the plan
+	private int points; // grid times of the statistics
+	private double lease; // seconds a claim lasts without a touch
+	private int jobs; // job files of the plan
+
+	/**
+	 * Opens the queue directory of an existing plan
+	 * @param dir - queue directory
+	 * @throws IOException if the directory holds no plan
+	 */
+	public WorkQueue(File dir) throws IOException {
+		this.dir = dir;
+		pending = new File(dir, "pending");
+		running = new File(dir, "running");
+		done = new File(dir, "done");
+		BufferedReader br = new BufferedReader(new FileReader(new File(dir, "plan")));
+		try {
+			replicates = Integer.parseInt(value(br.readLine()));
+			points = Integer.parseInt(value(br.readLine()));
+			lease = Double.parseDouble(value(br.readLine()));
+			jobs = Integer.parseInt(value(br.readLine()));
+		}
+		finally {
+			br.close();
+		}
+	}
+
+	/**
+	 * Writes a plan into an empty queue directory: the parameters and one
+	 * job file per batch of replicates
+	 * @param dir - queue directory, created if missing
+	 * @param parameter_file - parameter file of every replicate, record_interval > 0
+	 * @param replicates - number of replicates
+	 * @param points - number of grid times
+	 * @param lease - seconds a claim lasts without a touch
+	 * @return the queue
+	 * @throws IOException if the directory already holds a plan
+	 */
+	public static WorkQueue create(File dir, File parameter_file, int replicates, int points, double lease) throws IOException {
+		if (replicates <= 0) throw new IllegalArgumentException("replicates must be positive");
+		if (points <= 0) throw new IllegalArgumentException("grid times must be positive");
+		if (!(lease > 0)) throw new IllegalArgumentException("lease must be positive");
+		Parameters params = new Parameters();
+		Sim.read(parameter_file, params);
+		if (params.record_interval <= 0) throw new IllegalArgumentException("aggregation needs a record interval");
+		if (new File(dir, "plan").exists()) throw new FileAlreadyExistsException(new File(dir, "plan").getPath());
+
+		File pending = new File(dir, "pending");
+		Files.createDirectories(pending.toPath());
+		Files.createDirectories(new File(dir, "running").toPath());
+		Files.createDirectories(new File(dir, "done").toPath());
+		Files.copy(parameter_file.toPath(), new File(dir, "parameters").toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+		long[] seeds = Ensemble.seeds(params.seed, replicates);
+		int batch = (replicates + JOBS - 1) / JOBS;
+		int jobs = 0;
+		for (int lo = 0; lo < replicates; lo += batch, jobs++) {
+			PrintWriter out = new PrintWriter(new File(dir, "job.tmp"));
+			for (int r = lo; r < Math.min(lo + batch, replicates); r++) out.println(seeds[r]);
+			out.close();
+			Files.move(new File(dir, "job.tmp").toPath(), new File(pending, job(jobs)).toPath(), StandardCopyOption.ATOMIC_MOVE);
+		}
+
+		/* the plan is written last, so a directory with a plan has all its jobs */
+		PrintWriter out = new PrintWriter(new File(dir, "plan.tmp"));
+		out.println("replicates " + replicates);
+		out.println("points " + points);
+		out.println("lease " + lease);
+		out.println("jobs " + jobs);
+		out.close();
+		Files.move(new File(dir, "plan.tmp").toPath(), new File(dir, "plan").toPath(), StandardCopyOption.ATOMIC_MOVE);
+		return new WorkQueue(dir);
+	}
+
+	/**
+	 * Waits until every job is done, moving claims that stopped being
+	 * touched back to pending, then merges the statistics of all jobs
+	 * @param output - file the merged statistics are written to
+	 * @param workers - local worker processes, finished or not, to report on; may be empty
+	 * @return merged statistics
+	 */
+	public EnsembleStatistics coordinate(File output, List<Process> workers) throws IOException, InterruptedException {
+		Map<String, long[]> seen = new HashMap<String, long[]>(); // claim -> {modified time, local time it was seen}
+		boolean reported = false;
+		while (finished() < jobs) {
+			long now = System.currentTimeMillis();
+			Map<String, long[]> current = new HashMap<String, long[]>();
+			for (File claim : list(running)) {
+				long modified = claim.lastModified();
+				long[] before = seen.get(claim.getName());
+				long[] entry = before != null && before[0] == modified ? before : new long[] {modified, now};
+				if (now - entry[1] > lease * 1000) release(claim);
+				else current.put(claim.getName(), entry);
+			}
+			seen = current;
+
+			if (!reported && !workers.isEmpty() && !alive(workers)) {
+				System.err.println("Local workers exited with " + (jobs - finished()) + " jobs left, waiting for other workers");
+				reported = true;
+			}
+			Thread.sleep(POLL_MS);
+		}
+
+		EnsembleStatistics all = null;
+		for (int j = 0; j < jobs; j++) {
+			EnsembleStatistics job = EnsembleStatistics.read(new File(done, job(j) + ".stats"));
+			if (all == null) all = job;
+			else all.merge(job);
+		}
+		all.write(output);
+		return all;
+	}
+
+	/**
+	 * Claims and runs jobs until every job of the plan is done
+	 * @param threads - threads replicates of a job run on
+	 * @return number of jobs this worker ran
+	 */
+	public int work(int threads) throws IOException, InterruptedException {
+		Parameters params = new Parameters();
+		Sim.read(new File(dir, "parameters"), params);
+		params.debug = false;
+		params.exportTo = null;
+		params.trace = null;
+		params.checkpoint = null;
+		params.live = false;
+
+		String worker = ManagementFactory.getRuntimeMXBean().getName().replaceAll("[^A-Za-z0-9_-]", "_"); // no dots, they end the job name
+		Ensemble ensemble = new Ensemble(new ForkJoinPool(threads));
+		Timer touch = new Timer("lease", true);
+		int ran = 0;
+		try {
+			while (finished() < jobs) {
+				final File claim = claim(worker);
+				if (claim == null) {
+					Thread.sleep(POLL_MS); // jobs left are running elsewhere, and may be released
+					continue;
+				}
+				String name = job(claim);
+				File result = new File(done, name + ".stats");
+				if (!result.exists()) {
+					TimerTask task = new TimerTask() {
+						public void run() {
+							claim.setLastModified(System.currentTimeMillis());
+						}
+					};
+					touch.schedule(task, 0, Math.max(1, (long) (lease * 250)));
+					try {
+						ensemble.aggregate(params, seeds(claim), points).write(result);
+					}
+					finally {
+						task.cancel();
+					}
+					ran++;
+				}
+				Files.deleteIfExists(claim.toPath());
+			}
+		}
+		finally {
+			touch.cancel();
+			ensemble.shutdown();
+		}
+		return ran;
+	}
+
+	/**
+	 * @return number of jobs with statistics
+	 */
+	public int finished() {
+		int n = 0;
+		for (File file : list(done)) if (file.getName().endsWith(".stats")) n++;
+		return n;
+	}
+
+	/**
+	 * Coordinates a queue, or works on one
+	 *
+	 * @param args - "run", parameter file, replicates, grid points, queue
+	 * directory, output file, then optionally the number of local workers,
+	 * threads per worker and lease seconds (an existing plan in the
+	 * directory is continued and these values but the workers ignored);
+	 * or "work", queue directory and optionally threads, to join a queue
+	 * from any node that sees the directory
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length >= 6 && args[0].equalsIgnoreCase("run")) {
+			File dir = new File(args[4]);
+			int workers = args.length > 6 ? Integer.parseInt(args[6]) : Runtime.getRuntime().availableProcessors();
+			int threads = args.length > 7 ? Integer.parseInt(args[7]) : 1;
+			double lease = args.length > 8 ? Double.parseDouble(args[8]) : LEASE;
+			WorkQueue queue = new File(dir, "plan").exists() ? new WorkQueue(dir)
+					: create(dir, new File(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]), lease);
+
+			String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+			List<Process> processes = new ArrayList<Process>();
+			for (int w = 0; w < workers; w++) {
+				processes.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), WorkQueue.class.getName(),
+						"work", dir.getPath(), String.valueOf(threads)).inheritIO().start());
+			}
+			queue.coordinate(new File(args[5]), processes);
+			for (Process process : processes) process.waitFor();
+			System.out.println("Statistics of " + queue.replicates + " replicates written to " + args[5]);
+		}
+		else if (args.length >= 2 && args[0].equalsIgnoreCase("work")) {
+			new WorkQueue(new File(args[1])).work(args.length > 2 ? Integer.parseInt(args[2]) : 1);
+		}
+		else {
+			System.err.println("usage: WorkQueue run <parameter file> <replicates> <grid points> <queue directory> <output> "
+					+ "[workers [threads [lease seconds]]] | work <queue directory> [threads]");
+			System.exit(2);
+		}
+	}
+
+	/**
+	 * Renames the first pending job that no other worker got first
+	 * @param worker - name of this worker
+	 * @return claimed file in running, null if no job is pending
+	 */
+	private File claim(String worker) throws IOException {
+		File[] jobs = list(pending);
+		Arrays.sort(jobs);
+		for (File job : jobs) {
+			File claim = new File(running, job.getName() + "." + worker);
+			try {
+				Files.move(job.toPath(), claim.toPath(), StandardCopyOption.ATOMIC_MOVE);
+				claim.setLastModified(System.currentTimeMillis());
+				return claim;
+			}
+			catch (NoSuchFileException e) {
+				// claimed by another worker
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Moves a claim back to pending, unless its job is done
+	 */
+	private void release(File claim) throws IOException {
+		String name = job(claim);
+		try {
+			if (new File(done, name + ".stats").exists()) Files.delete(claim.toPath());
+			else Files.move(claim.toPath(), new File(pending, name).toPath(), StandardCopyOption.ATOMIC_MOVE);
+			System.err.println("Released " + claim.getName() + " after " + lease + " s without a touch");
+		}
+		catch (NoSuchFileException e) {
+			// finished by its worker meanwhile
+		}
+	}
+
+	/**
+	 * @return seeds in a job file
+	 */
+	private static long[] seeds(File job) throws IOException {
+		List<String> lines = Files.readAllLines(job.toPath());
+		long[] seeds = new long[lines.size()];
+		for (int i = 0; i < seeds.length; i++) seeds[i] = Long.parseLong(lines.get(i).trim());
+		return seeds;
+	}
+
+	/**
+	 * @return whether any process is running
+	 */
+	private static boolean alive(List<Process> processes) {
+		for (Process process : processes) if (process.isAlive()) return true;
+		return false;
+	}
+
+	/**
+	 * @return files in a directory, empty if it cannot be read
+	 */
+	private static File[] list(File directory) {
+		File[] files = directory.listFiles();
+		return files == null ? new File[0] : files;
+	}
+
+	/**
+	 * @return name of job j's file
+	 */
+	private static String job(int j) {
+		return String.format("job-%05d", j);
+	}
+
+	/**
+	 * @return name of the job a claim in running is for, the part before
+	 * the first dot
+	 */
+	private static String job(File claim) {
+		return claim.getName().substring(0, claim.getName().indexOf('.'));
+	}
+
+	/**
+	 * @return value of a "name value" plan line
+	 */
+	private static String value(String line) throws IOException {
+		if (line == null) throw new IOException("plan is incomplete");
+		return line.substring(line.indexOf(' ') + 1).trim();
+	}
+
+}
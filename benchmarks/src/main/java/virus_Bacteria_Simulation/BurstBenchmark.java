@@ -0,0 +1,87 @@
+package virus_Bacteria_Simulation;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time of Lambda_phage.switchPhase(): lysis of the host and creation of
+ * Lambda_phage.progeny free phage with their events. Each call bursts a
+ * batch of BATCH hosts, so the timer's own cost is spread over several
+ * bursts. The infected bacteria are added before each call and the
+ * progeny denature after it, both outside the measurement, so the
+ * populations return to their size after every call; during one, free
+ * phage grow by at most BATCH * progeny.
+ * @author Parker, Huttner
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BurstBenchmark {
+
+	/* Class Variables */
+	static final int BATCH = 8; // bursts per call
+
+	/* Parameters */
+	@Param({"next", "direct", "aggregate"})
+	public String method;
+	@Param({"100", "1000", "10000"})
+	public int lp_start;
+	@Param({"200", "2000", "20000"})
+	public int ba_start;
+
+	/* Instance Variables */
+	private SimulationContext ctx;
+	private Lambda_phage[] prophages = new Lambda_phage[BATCH];
+	private int free; // free phage before the burst
+
+	@Setup(Level.Trial)
+	public void populate() {
+		ctx = Scenarios.populated(method, lp_start, ba_start, 1);
+	}
+
+	/**
+	 * Adds BATCH bacteria holding a prophage, as Bacterium.reproduce does
+	 */
+	@Setup(Level.Invocation)
+	public void infect() {
+		free = ctx.lps.size();
+		for (int i = 0; i < BATCH; i++) {
+			Bacterium host = new Bacterium(ctx);
+			host.infected = true;
+			host.lp = new Lambda_phage(ctx.lps.get(0), host);
+			ctx.pro.add(host.lp);
+			ctx.bas.add(host);
+			prophages[i] = host.lp;
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void switchPhase() {
+		for (int i = 0; i < BATCH; i++) prophages[i].switchPhase();
+	}
+
+	@TearDown(Level.Invocation)
+	public void denature() {
+		while (ctx.lps.size() > free) ctx.lps.get(ctx.lps.size() - 1).denature();
+	}
+
+}
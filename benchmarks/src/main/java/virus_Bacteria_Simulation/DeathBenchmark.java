@@ -0,0 +1,82 @@
+package virus_Bacteria_Simulation;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time of Bacterium.death(): removing a random bacterium from its
+ * population and invalidating its events in the scheduler. A death takes
+ * nanoseconds, too little to time one by one, so each call kills a batch
+ * of BATCH distinct random bacteria. Before each call BATCH new bacteria
+ * are added outside the measurement, so the population and event pool
+ * stay within BATCH of their starting size.
+ * @author Parker, Huttner
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeathBenchmark {
+
+	/* Class Variables */
+	static final int BATCH = 64; // deaths per call
+
+	/* Parameters */
+	@Param({"next", "direct", "aggregate"})
+	public String method;
+	@Param({"100", "1000", "10000"})
+	public int lp_start;
+	@Param({"200", "2000", "20000"})
+	public int ba_start;
+
+	/* Instance Variables */
+	private SimulationContext ctx;
+	private RandomStream rand = new RandomStream(1);
+	private Bacterium[] victims = new Bacterium[BATCH];
+
+	@Setup(Level.Trial)
+	public void populate() {
+		ctx = Scenarios.populated(method, lp_start, ba_start, 1);
+	}
+
+	/**
+	 * Adds BATCH bacteria and picks BATCH distinct victims among all of them
+	 */
+	@Setup(Level.Invocation)
+	public void replace() {
+		for (int i = 0; i < BATCH; i++) ctx.bas.add(new Bacterium(ctx));
+		Set<Bacterium> picked = new HashSet<Bacterium>();
+		for (int i = 0; i < BATCH; i++) {
+			Bacterium victim = ctx.bas.sample(rand);
+			while (!picked.add(victim)) victim = ctx.bas.sample(rand);
+			victims[i] = victim;
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public int death() {
+		int prophage = 0;
+		for (int i = 0; i < BATCH; i++) if (victims[i].death()) prophage++;
+		return prophage;
+	}
+
+}
@@ -0,0 +1,82 @@
+package virus_Bacteria_Simulation;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time per event of the event selection loop of SimulationContext: choose
+ * the next event, execute it and let the scheduler update, without
+ * recording or checks.
+ *
+ * Populations keep changing while the loop runs, so the run starts again
+ * from its starting populations whenever they die out or grow past GROWTH
+ * times their starting size, keeping the measurement near the chosen
+ * lp_start / ba_start.
+ * @author Parker, Huttner
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventLoopBenchmark {
+
+	/* Class Variables */
+	static final int GROWTH = 16;
+
+	/* Parameters */
+	@Param({"next", "direct", "aggregate", "compact", "binned", "hybrid"})
+	public String method;
+	@Param({"100", "1000", "10000"})
+	public int lp_start;
+	@Param({"200", "2000", "20000"})
+	public int ba_start;
+
+	/* Instance Variables */
+	private SimulationContext ctx;
+	private long seed;
+	private int limit; // organisms at which the run starts again
+
+	@Setup(Level.Iteration)
+	public void setUp() {
+		limit = GROWTH * (lp_start + ba_start);
+		reset();
+	}
+
+	/**
+	 * Fires one event
+	 * @return fired event, null if the run started again instead
+	 */
+	@Benchmark
+	public Event step() {
+		Event evt = ctx.scheduler.next();
+		int bas = ctx.bas_size(), lps = ctx.lps_size();
+		if (evt == null || bas == 0 || lps == 0 || bas + lps > limit) {
+			reset();
+			return null;
+		}
+		ctx.t = evt.time;
+		evt.org.execute(evt.type);
+		ctx.scheduler.fired(evt);
+		return evt;
+	}
+
+	private void reset() {
+		ctx = Scenarios.populated(method, lp_start, ba_start, seed++);
+	}
+
+}
@@ -0,0 +1,62 @@
+package virus_Bacteria_Simulation;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to record one sample of the trajectory, the work Sim.addParameters
+ * used to do after every event: Recorder.advance sampling every event into
+ * its buffers, with the buffer handed to a sink that drops it every
+ * Recorder.CAPACITY samples.
+ * @author Parker, Huttner
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecorderBenchmark {
+
+	/* Parameters */
+	@Param({"next", "compact", "hybrid"})
+	public String method;
+	@Param({"100", "1000", "10000"})
+	public int lp_start;
+	@Param({"200", "2000", "20000"})
+	public int ba_start;
+
+	/* Instance Variables */
+	private SimulationContext ctx;
+
+	@Setup(Level.Trial)
+	public void populate() {
+		ctx = Scenarios.populated(method, lp_start, ba_start, 1);
+		ctx.recorder.addSink(new TrajectorySink() {
+			public void write(double[][] columns, int rows) {
+			}
+
+			public void close() {
+			}
+		});
+	}
+
+	@Benchmark
+	public void sample() {
+		ctx.recorder.advance(ctx.t, 1);
+	}
+
+}
@@ -0,0 +1,50 @@
+package virus_Bacteria_Simulation;
+
+/**
+ * Simulation set-ups shared by the benchmarks. Benchmarks live in the
+ * simulation's package so they can drive its package private state
+ * directly, the way SimulationContext does.
+ *
+ * Debug printing, invariant checks and recording are off unless a
+ * benchmark turns them on, so only the simulation itself is measured.
+ * @author Parker, Huttner
+ *
+ */
+final class Scenarios {
+
+	/* Class Variables */
+	static final int STEP_MAX = 1 << 30; // step_sum at which an end-to-end run stops
+
+	private Scenarios() {
+	}
+
+	/**
+	 * @param method - scheduler name, as in the parameter file
+	 * @param lp_start - starting number of lambda phage
+	 * @param ba_start - starting number of bacteria
+	 * @param seed - seed of the run
+	 * @return parameters of a benchmark run
+	 */
+	static Parameters parameters(String method, int lp_start, int ba_start, long seed) {
+		Parameters params = new Parameters();
+		params.method = method;
+		params.lp_start = lp_start;
+		params.ba_start = ba_start;
+		params.step_max = STEP_MAX;
+		params.bin_width = 0.05;
+		params.seed = seed;
+		params.debug = false;
+		params.check_every = 0;
+		return params;
+	}
+
+	/**
+	 * @return run holding its starting populations, no event fired yet
+	 */
+	static SimulationContext populated(String method, int lp_start, int ba_start, long seed) {
+		SimulationContext ctx = new SimulationContext(parameters(method, lp_start, ba_start, seed));
+		ctx.populate();
+		return ctx;
+	}
+
+}
@@ -0,0 +1,77 @@
+package virus_Bacteria_Simulation;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end throughput: whole runs through SimulationContext.run, from
+ * the starting populations until step_sum reaches Scenarios.STEP_MAX or a
+ * population dies out. Besides runs per second JMH reports the secondary
+ * result "events", the events fired per second. Every run has a new seed
+ * from a fixed sequence, so a trial always sees the same runs.
+ *
+ * tau also runs here; choose it with -p method=tau.
+ * @author Parker, Huttner
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SimulationBenchmark {
+
+	/* Parameters */
+	@Param({"next", "aggregate", "compact", "hybrid"})
+	public String method;
+	@Param({"100", "1000", "10000"})
+	public int lp_start;
+	@Param({"200", "2000", "20000"})
+	public int ba_start;
+
+	/* Instance Variables */
+	private RandomStream seeds;
+
+	/**
+	 * Events fired, reported by JMH as a rate
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Events {
+
+		public long events;
+
+		@Setup(Level.Iteration)
+		public void clear() {
+			events = 0;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void seed() {
+		seeds = new RandomStream(1);
+	}
+
+	@Benchmark
+	public SimulationContext run(Events counter) {
+		SimulationContext ctx = new SimulationContext(Scenarios.parameters(method, lp_start, ba_start, seeds.nextLong()));
+		ctx.run();
+		counter.events += ctx.events;
+		return ctx;
+	}
+
+}